@@ -0,0 +1,155 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Random;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Fixed inputs shared by the benchmarks: the checked-in sample files under
+ * /sample and a seeded synthetic forest, so runs are comparable across
+ * commits.
+ */
+final class BenchmarkData {
+
+    static final String SAMPLE = "/sample/";
+
+    private BenchmarkData() {
+    }
+
+    static byte[] resource(String name) throws IOException {
+        try (InputStream in = BenchmarkData.class.getResourceAsStream(SAMPLE + name)) {
+            if (in == null) {
+                throw new IOException("Missing sample resource: " + name);
+            }
+            return in.readAllBytes();
+        }
+    }
+
+    static String text(String name) throws IOException {
+        return new String(resource(name), StandardCharsets.UTF_8);
+    }
+
+    static List<String> featureNames() throws IOException {
+        Type listType = new TypeToken<List<String>>(){}.getType();
+        return new Gson().fromJson(text("feature_names.json"), listType);
+    }
+
+    /**
+     * The feature columns of sample_dataset.csv, in feature_names.json order.
+     */
+    static double[][] sampleRows() throws IOException {
+        Path csv = copyToTemp("sample_dataset.csv");
+        try {
+            ColumnarDataset dataset = CsvLoader.load(csv);
+            List<String> names = featureNames();
+            double[][] rows = new double[dataset.getRowCount()][names.size()];
+            for (int f = 0; f < names.size(); f++) {
+                double[] column = dataset.getColumn(dataset.indexOf(names.get(f)));
+                for (int r = 0; r < rows.length; r++) {
+                    rows[r][f] = column[r];
+                }
+            }
+            return rows;
+        } finally {
+            Files.deleteIfExists(csv);
+        }
+    }
+
+    static Path copyToTemp(String name) throws IOException {
+        String suffix = name.substring(name.lastIndexOf('.'));
+        Path file = Files.createTempFile("pbl-bench", suffix);
+        try (InputStream in = BenchmarkData.class.getResourceAsStream(SAMPLE + name)) {
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+
+    /**
+     * Extracts a bundled Python script from the app jar so it can be run.
+     */
+    static Path script(String resource) throws IOException {
+        Path file = Files.createTempFile("pbl-bench", ".py");
+        try (InputStream in = App.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("Missing script: " + resource);
+            }
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Writes a random forest_model.bin of full binary trees, with the same
+     * layout infant_mortality_analysis.py exports.
+     */
+    static Path syntheticForest(int features, int trees, int depth, long seed) throws IOException {
+        Random random = new Random(seed);
+        Path file = Files.createTempFile("pbl-bench", ".bin");
+        file.toFile().deleteOnExit();
+        try (OutputStream out = Files.newOutputStream(file)) {
+            ByteBuffer header = ByteBuffer.allocate(12 + 16 * features + 4).order(ByteOrder.LITTLE_ENDIAN);
+            header.put("PBLF".getBytes(StandardCharsets.US_ASCII)).putInt(2).putInt(features);
+            for (int f = 0; f < features; f++) {
+                header.putDouble(50);
+            }
+            for (int f = 0; f < features; f++) {
+                header.putDouble(25);
+            }
+            header.putInt(trees);
+            out.write(header.array());
+
+            int nodes = (1 << (depth + 1)) - 1;
+            for (int t = 0; t < trees; t++) {
+                ByteBuffer tree = ByteBuffer.allocate(4 + nodes * (4 + 8 + 4 + 4 + 8 + 8)).order(ByteOrder.LITTLE_ENDIAN);
+                tree.putInt(nodes);
+                // Heap layout: children of i are 2i+1 and 2i+2; the last level are leaves
+                int firstLeaf = nodes / 2;
+                for (int i = 0; i < nodes; i++) {
+                    tree.putInt(i >= firstLeaf ? -2 : random.nextInt(features));
+                }
+                for (int i = 0; i < nodes; i++) {
+                    tree.putDouble(i >= firstLeaf ? -2 : random.nextGaussian());
+                }
+                for (int i = 0; i < nodes; i++) {
+                    tree.putInt(i >= firstLeaf ? -1 : 2 * i + 1);
+                }
+                for (int i = 0; i < nodes; i++) {
+                    tree.putInt(i >= firstLeaf ? -1 : 2 * i + 2);
+                }
+                // Random leaf values and sample counts; inner nodes get their children's totals and weighted means
+                double[] value = new double[nodes];
+                double[] cover = new double[nodes];
+                for (int i = nodes - 1; i >= 0; i--) {
+                    if (i >= firstLeaf) {
+                        value[i] = 5 + 60 * random.nextDouble();
+                        cover[i] = 1 + random.nextInt(20);
+                    } else {
+                        cover[i] = cover[2 * i + 1] + cover[2 * i + 2];
+                        value[i] = (value[2 * i + 1] * cover[2 * i + 1] + value[2 * i + 2] * cover[2 * i + 2]) / cover[i];
+                    }
+                }
+                for (int i = 0; i < nodes; i++) {
+                    tree.putDouble(value[i]);
+                }
+                for (int i = 0; i < nodes; i++) {
+                    tree.putDouble(cover[i]);
+                }
+                out.write(tree.array());
+            }
+        }
+        return file;
+    }
+}
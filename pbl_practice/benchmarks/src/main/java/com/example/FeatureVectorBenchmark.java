@@ -0,0 +1,66 @@
+package com.example;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Turning the prediction form's text fields into model input. The field
+ * texts stand in for featureFields (TextField needs the FX toolkit).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FeatureVectorBenchmark {
+
+    private List<String> featureNames;
+    private Map<String, String> fieldTexts;
+
+    @Setup
+    public void load() throws IOException {
+        featureNames = BenchmarkData.featureNames();
+        double[] row = BenchmarkData.sampleRows()[0];
+        fieldTexts = new HashMap<>();
+        for (int i = 0; i < featureNames.size(); i++) {
+            fieldTexts.put(featureNames.get(i), Double.toString(row[i]));
+        }
+    }
+
+    /** The original path: a name-to-value map serialized to JSON for predict.py. */
+    @Benchmark
+    public String mapToJson() {
+        Map<String, Double> featureValues = new HashMap<>();
+        for (String feature : featureNames) {
+            featureValues.put(feature, Double.parseDouble(fieldTexts.get(feature)));
+        }
+        return new Gson().toJson(featureValues);
+    }
+
+    /** The current path: a vector in feature_names.json order. */
+    @Benchmark
+    public double[] orderedVector() {
+        double[] values = new double[featureNames.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Double.parseDouble(fieldTexts.get(featureNames.get(i)));
+        }
+        return values;
+    }
+}
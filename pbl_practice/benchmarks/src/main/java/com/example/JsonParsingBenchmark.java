@@ -0,0 +1,77 @@
+package com.example;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing the result files the screens read, with Gson set up the way the
+ * controllers use it. File contents are read once in setup so only the
+ * parsing is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class JsonParsingBenchmark {
+
+    private static final Type METRICS_TYPE = new TypeToken<Map<String, Map<String, Double>>>(){}.getType();
+    private static final Type NAMES_TYPE = new TypeToken<List<String>>(){}.getType();
+
+    private String metricsJson;
+    private String featureNamesJson;
+    private Gson gson;
+
+    @Setup
+    public void load() throws IOException {
+        metricsJson = BenchmarkData.text("model_metrics.json");
+        featureNamesJson = BenchmarkData.text("feature_names.json");
+        gson = new Gson();
+    }
+
+    /** As the controllers do it: a new Gson per call. */
+    @Benchmark
+    public Map<String, Map<String, Double>> modelMetrics() {
+        return new Gson().fromJson(metricsJson, METRICS_TYPE);
+    }
+
+    @Benchmark
+    public Map<String, Map<String, Double>> modelMetricsSharedGson() {
+        return gson.fromJson(metricsJson, METRICS_TYPE);
+    }
+
+    @Benchmark
+    public JsonElement modelMetricsTree() {
+        return JsonParser.parseString(metricsJson);
+    }
+
+    @Benchmark
+    public List<String> featureNames() {
+        return new Gson().fromJson(featureNamesJson, NAMES_TYPE);
+    }
+
+    @Benchmark
+    public List<String> featureNamesSharedGson() {
+        return gson.fromJson(featureNamesJson, NAMES_TYPE);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding the checked-in plot PNGs at full resolution and subsampled to
+ * the width the results screen shows them at. ImageIO stands in for
+ * javafx.scene.image.Image, which needs the FX toolkit.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PngDecodeBenchmark {
+
+    @Param({
+        "feature_distributions.png",
+        "correlation_heatmap.png",
+        "feature_importance.png",
+        "model_comparison.png"
+    })
+    public String plot;
+
+    private byte[] png;
+    private int subsampling;
+
+    @Setup
+    public void load() throws IOException {
+        png = BenchmarkData.resource(plot);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        subsampling = (int) Math.max(1, Math.ceil(image.getWidth() / PrimaryController.PLOT_WIDTH));
+    }
+
+    @Benchmark
+    public BufferedImage fullResolution() throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(png));
+    }
+
+    @Benchmark
+    public BufferedImage displayWidth() throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(png))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
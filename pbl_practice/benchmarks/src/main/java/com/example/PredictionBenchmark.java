@@ -0,0 +1,137 @@
+package com.example;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of one prediction through each path the app has had: a new
+ * predict.py process per request, the long-lived prediction worker, and the
+ * exported forest evaluated in-process, plus the TreeSHAP explanation shown
+ * beside each prediction. The Python paths need python with
+ * the app's requirements and output_plots/ in the working directory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PredictionBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Rows {
+        double[][] rows;
+        List<String> featureNames;
+        int next;
+
+        @Setup
+        public void load() throws IOException {
+            rows = BenchmarkData.sampleRows();
+            featureNames = BenchmarkData.featureNames();
+        }
+
+        double[] next() {
+            double[] row = rows[next];
+            next = (next + 1) % rows.length;
+            return row;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Forest {
+        ForestModel model;
+
+        @Setup
+        public void load() throws IOException {
+            // Same shape as the app's random forest: 100 trees over the 10 selected features
+            model = ForestModel.load(BenchmarkData.syntheticForest(10, 100, 12, 42));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Worker {
+        PredictionWorker worker;
+
+        @Setup(Level.Trial)
+        public void start() throws IOException {
+            worker = new PredictionWorker(BenchmarkData.script("/scripts/predict.py").toString());
+            worker.start();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            worker.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Script {
+        Path path;
+
+        @Setup
+        public void extract() throws IOException {
+            path = BenchmarkData.script("/scripts/predict.py");
+        }
+    }
+
+    @Benchmark
+    public double inProcessForest(Rows rows, Forest forest) {
+        return forest.model.predict(rows.next());
+    }
+
+    @Benchmark
+    public double[] forestExplanation(Rows rows, Forest forest) {
+        return forest.model.explain(rows.next());
+    }
+
+    @Benchmark
+    public double pythonWorker(Rows rows, Worker worker) throws Exception {
+        return worker.worker.predict(rows.next()).get();
+    }
+
+    /**
+     * The original path: a python process per prediction, given the
+     * features as a JSON object on the command line.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1, time = 5)
+    @Measurement(iterations = 3, time = 10)
+    public double processPerRequest(Rows rows, Script script) throws Exception {
+        double[] row = rows.next();
+        Map<String, Double> features = new HashMap<>();
+        for (int i = 0; i < row.length; i++) {
+            features.put(rows.featureNames.get(i), row[i]);
+        }
+        Process process = new ProcessBuilder("python", script.path.toString(), new Gson().toJson(features)).start();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String prediction = reader.readLine();
+            if (process.waitFor() != 0 || prediction == null) {
+                throw new IOException("predict.py failed with exit code " + process.exitValue());
+            }
+            return Double.parseDouble(prediction);
+        }
+    }
+}
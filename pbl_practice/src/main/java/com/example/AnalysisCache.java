@@ -0,0 +1,257 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of analysis results, one directory per key. The key is a
+ * hash of the CSV contents and of the analysis script, so editing either
+ * one misses the cache. Entries, and the columnar copies of datasets kept
+ * alongside them, are evicted least recently used first once the cache
+ * grows past its size limit. Files a running job still reads are pinned
+ * and never evicted.
+ */
+public class AnalysisCache {
+
+    static final String[] ARTIFACTS = {
+        "feature_distributions.png",
+        "correlation_heatmap.png",
+        "feature_importance.png",
+        "model_comparison.png",
+        "model_metrics.json",
+        HyperparameterSearch.FILE_NAME,
+        "feature_names.json",
+        ChartData.FILE_NAME,
+        "scaler.joblib",
+        "best_model.joblib",
+        ForestModel.FILE_NAME
+    };
+
+    private static final long DEFAULT_MAX_BYTES = 512L * 1024 * 1024;
+    /** Marks entries still being stored, which eviction leaves alone. */
+    private static final String STAGING_SUFFIX = ".tmp";
+
+    /** Pinned files, with how many jobs hold each one. */
+    private static final Map<Path, Integer> PINNED = new HashMap<>();
+
+    private static AnalysisCache shared;
+
+    private final Path root;
+    private final long maxBytes;
+
+    AnalysisCache(Path root, long maxBytes) {
+        this.root = root;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * The cache under ./analysis_cache, bounded by the pbl.cache.maxBytes
+     * system property (512 MB by default).
+     */
+    static synchronized AnalysisCache shared() {
+        if (shared == null) {
+            shared = new AnalysisCache(Paths.get("analysis_cache"),
+                Long.getLong("pbl.cache.maxBytes", DEFAULT_MAX_BYTES));
+        }
+        return shared;
+    }
+
+    /**
+     * Computes the cache key for a dataset analysed with the given script.
+     */
+    public String key(Path dataset, InputStream script) throws IOException {
+        MessageDigest digest = sha256();
+        try (FileChannel channel = FileChannel.open(dataset, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return key(digest, script);
+    }
+
+    /**
+     * Computes the cache key from a SHA-256 digest already fed the whole
+     * dataset, as by a pass that read it anyway.
+     */
+    String key(MessageDigest dataset, InputStream script) throws IOException {
+        byte[] block = new byte[8192];
+        int read;
+        while ((read = script.read(block)) > 0) {
+            dataset.update(block, 0, read);
+        }
+        return hex(dataset.digest());
+    }
+
+    /**
+     * Keeps a file out of eviction until it is unpinned as many times, and
+     * marks it as recently used.
+     */
+    static void pin(Path file) {
+        synchronized (PINNED) {
+            PINNED.merge(file.toAbsolutePath().normalize(), 1, Integer::sum);
+        }
+        try {
+            if (Files.exists(file)) {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            }
+        } catch (IOException e) {
+            System.err.println("Could not touch " + file + ": " + e.getMessage());
+        }
+    }
+
+    static void unpin(Path file) {
+        synchronized (PINNED) {
+            PINNED.computeIfPresent(file.toAbsolutePath().normalize(), (path, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    private static boolean isPinned(Path file) {
+        synchronized (PINNED) {
+            return PINNED.containsKey(file.toAbsolutePath().normalize());
+        }
+    }
+
+    Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Copies a cached entry into the output directory. Returns false on a miss.
+     */
+    public boolean restore(String key, Path outputDir) throws IOException {
+        Path entry = root.resolve(key);
+        if (!Files.isRegularFile(entry.resolve("model_metrics.json"))) {
+            return false;
+        }
+        Files.createDirectories(outputDir);
+        for (String artifact : ARTIFACTS) {
+            Path cached = entry.resolve(artifact);
+            Path target = outputDir.resolve(artifact);
+            if (Files.exists(cached)) {
+                Files.copy(cached, target, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.deleteIfExists(target);
+            }
+        }
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        return true;
+    }
+
+    /**
+     * Stores the artifacts currently in the output directory under the key,
+     * then evicts old entries if the cache is over its size limit.
+     */
+    public void store(String key, Path outputDir) throws IOException {
+        Path entry = root.resolve(key);
+        Files.createDirectories(root);
+        Path staging = Files.createTempDirectory(root, key + STAGING_SUFFIX);
+        try {
+            for (String artifact : ARTIFACTS) {
+                Path source = outputDir.resolve(artifact);
+                if (Files.exists(source)) {
+                    Files.copy(source, staging.resolve(artifact), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            if (!Files.exists(entry)) {
+                Files.move(staging, entry, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } finally {
+            deleteRecursively(staging);
+        }
+        evict(entry);
+    }
+
+    /**
+     * Deletes least recently used entries, and columnar dataset copies,
+     * until the cache is within its size limit. Entries another job is still
+     * staging, and pinned files, are not counted or deleted.
+     */
+    void evict(Path keep) throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try (Stream<Path> children = Files.list(root)) {
+            children.filter(child -> Files.isDirectory(child)
+                    ? !child.getFileName().toString().contains(STAGING_SUFFIX)
+                    : child.getFileName().toString().endsWith(ColumnarFile.EXTENSION) && !isPinned(child))
+                .forEach(entries::add);
+        }
+        entries.sort(Comparator.comparingLong(AnalysisCache::lastModified));
+
+        long total = 0;
+        List<Long> sizes = new ArrayList<>();
+        for (Path entry : entries) {
+            long size = sizeOf(entry);
+            sizes.add(size);
+            total += size;
+        }
+        for (int i = 0; i < entries.size() && total > maxBytes; i++) {
+            if (entries.get(i).equals(keep)) {
+                continue;
+            }
+            deleteRecursively(entries.get(i));
+            total -= sizes.get(i);
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long sizeOf(Path directory) throws IOException {
+        if (Files.isRegularFile(directory)) {
+            return Files.size(directory);
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+
+    static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
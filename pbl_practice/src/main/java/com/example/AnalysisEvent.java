@@ -0,0 +1,85 @@
+package com.example;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * One JSON-lines progress event written by infant_mortality_analysis.py,
+ * e.g. {"event": "plot_written", "path": "...", "ts": 1700000000.5}.
+ */
+public final class AnalysisEvent {
+
+    static final String PHASE_STARTED = "phase_started";
+    static final String PHASE_FINISHED = "phase_finished";
+    static final String PLOT_WRITTEN = "plot_written";
+    static final String CHART_DATA = "chart_data";
+    static final String MODELS = "models";
+    static final String MODEL_METRICS = "model_metrics";
+    static final String CANDIDATE_SCORES = "candidate_scores";
+    static final String WARNING = "warning";
+
+    private final String type;
+    private final double timestamp;
+    private final JsonObject data;
+
+    private AnalysisEvent(String type, double timestamp, JsonObject data) {
+        this.type = type;
+        this.timestamp = timestamp;
+        this.data = data;
+    }
+
+    /**
+     * Parses a line of script output, or returns null if it is not an event.
+     */
+    static AnalysisEvent parse(String line) {
+        String trimmed = line.trim();
+        if (!trimmed.startsWith("{")) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            JsonObject data = JsonParser.parseString(trimmed).getAsJsonObject();
+            Metrics.timer("json.event").recordSince(start);
+            if (!data.has("event")) {
+                return null;
+            }
+            double timestamp = data.has("ts") ? data.get("ts").getAsDouble() : System.currentTimeMillis() / 1000.0;
+            return new AnalysisEvent(data.get("event").getAsString(), timestamp, data);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the last event of the given type in a script's output.
+     */
+    static AnalysisEvent find(String output, String type) {
+        AnalysisEvent found = null;
+        for (String line : output.split("\n")) {
+            AnalysisEvent event = parse(line);
+            if (event != null && event.type.equals(type)) {
+                found = event;
+            }
+        }
+        return found;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /** Seconds since the epoch, as reported by the script. */
+    public double getTimestamp() {
+        return timestamp;
+    }
+
+    public String getString(String field) {
+        JsonElement value = data.get(field);
+        return value == null || value.isJsonNull() ? null : value.getAsString();
+    }
+
+    public JsonElement get(String field) {
+        return data.get(field);
+    }
+}
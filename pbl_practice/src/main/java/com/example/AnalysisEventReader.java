@@ -0,0 +1,109 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+
+/**
+ * Turns lines of script output into {@link AnalysisEvent}s and hands them
+ * to a listener on the FX thread. Lines may arrive from several script
+ * processes at once; events are queued and delivered in batches, so a
+ * burst of output costs one Platform.runLater rather than one per line.
+ * Phase start/finish timestamps are collected for a timing breakdown.
+ */
+public class AnalysisEventReader implements Consumer<String> {
+
+    private final Consumer<AnalysisEvent> listener;
+    private final Queue<AnalysisEvent> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Map<String, Double> phaseStarts = new LinkedHashMap<>();
+    private final Map<String, Double> phaseDurations = new LinkedHashMap<>();
+    private final Set<String> failedPhases = new HashSet<>();
+
+    public AnalysisEventReader(Consumer<AnalysisEvent> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Called from the process reader threads with each line of output.
+     * Lines that are not events (library output, tracebacks) are logged.
+     */
+    @Override
+    public void accept(String line) {
+        AnalysisEvent event = AnalysisEvent.parse(line);
+        if (event == null) {
+            System.out.println("Script output: " + line);
+            return;
+        }
+        recordTiming(event);
+        pending.add(event);
+        if (drainScheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::drain);
+        }
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        List<AnalysisEvent> batch = new ArrayList<>();
+        AnalysisEvent event;
+        while ((event = pending.poll()) != null) {
+            // A plot rewritten within the same batch only needs to be shown once
+            if (AnalysisEvent.PLOT_WRITTEN.equals(event.getType())) {
+                String path = event.getString("path");
+                batch.removeIf(earlier -> AnalysisEvent.PLOT_WRITTEN.equals(earlier.getType())
+                    && path != null && path.equals(earlier.getString("path")));
+            }
+            batch.add(event);
+        }
+        for (AnalysisEvent queued : batch) {
+            listener.accept(queued);
+        }
+    }
+
+    private synchronized void recordTiming(AnalysisEvent event) {
+        boolean started = AnalysisEvent.PHASE_STARTED.equals(event.getType());
+        if (!started && !AnalysisEvent.PHASE_FINISHED.equals(event.getType())) {
+            return;
+        }
+        String phase = event.getString("phase");
+        String model = event.getString("model");
+        String key = model == null ? phase : phase + " (" + model + ")";
+        if (started) {
+            phaseStarts.put(key, event.getTimestamp());
+        } else {
+            Double start = phaseStarts.get(key);
+            if (start != null) {
+                phaseDurations.put(key, event.getTimestamp() - start);
+                // A phase that raised still reports how long it ran, marked as failed
+                if (event.getString("error") != null) {
+                    failedPhases.add(key);
+                    Metrics.counter("phase." + phase + ".errors").increment();
+                }
+                Metrics.timer("phase." + phase).recordNanos((long) ((event.getTimestamp() - start) * 1e9));
+            }
+        }
+    }
+
+    /**
+     * Seconds spent in each finished phase, in the order phases started.
+     */
+    public synchronized Map<String, Double> getPhaseDurations() {
+        Map<String, Double> ordered = new LinkedHashMap<>();
+        for (String key : phaseStarts.keySet()) {
+            Double duration = phaseDurations.get(key);
+            if (duration != null) {
+                ordered.put(failedPhases.contains(key) ? key + " (failed)" : key, duration);
+            }
+        }
+        return ordered;
+    }
+}
@@ -0,0 +1,607 @@
+package com.example;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.reflect.TypeToken;
+
+import javafx.application.Platform;
+
+/**
+ * One analysis of one dataset, run by {@link AnalysisJobScheduler}. The job
+ * loads and ranks the data in-process, then runs the prepare stage, the
+ * hyperparameter search, the train and save_best stages and finalize,
+ * writing everything to its own output directory. Progress is reported to
+ * the listener on the FX thread.
+ */
+public class AnalysisJob {
+
+    public enum Status { QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED }
+
+    /**
+     * Receives job progress on the FX thread.
+     */
+    interface Listener {
+        void onEvent(AnalysisJob job, AnalysisEvent event);
+
+        void onStatusChanged(AnalysisJob job);
+    }
+
+    // The app draws its charts from chart data; -Dpbl.plots.png=true also has matplotlib draw PNGs
+    private static final boolean DRAW_PNG = Boolean.getBoolean("pbl.plots.png");
+
+    private final int id;
+    private final Path dataset;
+    private final Path outputDir;
+    private final AnalysisJobScheduler scheduler;
+    private final ProcessGroup processes = new ProcessGroup();
+    private final AtomicReference<Status> status = new AtomicReference<>(Status.QUEUED);
+    private final Map<String, Map<String, Double>> metrics = new LinkedHashMap<>();
+    private volatile String message = "Queued";
+    private volatile String summary;
+    private volatile Map<String, Double> ranking = Collections.emptyMap();
+    private volatile Map<String, Double> phaseDurations = Collections.emptyMap();
+    private volatile ChartData chartData;
+    private volatile HyperparameterSearch search;
+    private volatile boolean cached;
+    private volatile boolean incremental;
+    /** The sample the script trains on when the file is too large to load, or null. */
+    private volatile Path sampleFile;
+    /** Whether the file is too large to load, so that only its sample may reach the script. */
+    private volatile boolean large;
+    /** SHA-256 of the file taken while sampling or hashing it for appends, so the cache key needs no more passes. */
+    private MessageDigest datasetDigest;
+    /** The heatmap matrix computed by loadDataset, handed to the prepare stage, or null. */
+    private volatile File correlationFile;
+    /** The columnar file (copy or sample) the script reads, kept out of cache eviction until the job ends. */
+    private Path pinnedFile;
+    /** Statistics to save for incremental updates, or null. */
+    private IncrementalStats stats;
+    private volatile int warningCount;
+    private final Object workerLock = new Object();
+    private Thread worker;
+    private volatile Listener listener;
+
+    AnalysisJob(int id, Path dataset, Path outputDir, AnalysisJobScheduler scheduler) {
+        this.id = id;
+        this.dataset = dataset;
+        this.outputDir = outputDir;
+        this.scheduler = scheduler;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return dataset.getFileName().toString();
+    }
+
+    public Path getOutputDir() {
+        return outputDir;
+    }
+
+    public Status getStatus() {
+        return status.get();
+    }
+
+    public boolean isFinished() {
+        Status current = status.get();
+        return current != Status.QUEUED && current != Status.RUNNING;
+    }
+
+    /** The latest progress or result message. */
+    public String getMessage() {
+        return message;
+    }
+
+    /** Row and column counts of the loaded dataset, or null until loaded. */
+    public String getSummary() {
+        return summary;
+    }
+
+    /** Top features by correlation with the target, strongest first. */
+    public Map<String, Double> getRanking() {
+        return ranking;
+    }
+
+    /** Metrics of the models trained so far, in the order they finished. */
+    public synchronized Map<String, Map<String, Double>> getMetrics() {
+        return new LinkedHashMap<>(metrics);
+    }
+
+    public Map<String, Double> getPhaseDurations() {
+        return phaseDurations;
+    }
+
+    /** The hyperparameter search behind the trained models, or null until it has run. */
+    public HyperparameterSearch getSearch() {
+        return search;
+    }
+
+    /** Data behind the charts computed so far, or null if there is none yet. */
+    public ChartData getChartData() {
+        return chartData;
+    }
+
+    public boolean isCached() {
+        return cached;
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Cancels the job: a queued job never starts, and a running job has its
+     * script processes killed.
+     */
+    public void cancel() {
+        if (status.compareAndSet(Status.QUEUED, Status.CANCELLED)) {
+            message = "Cancelled";
+            notifyStatus();
+            return;
+        }
+        processes.cancel();
+        synchronized (workerLock) {
+            if (worker != null) {
+                worker.interrupt();
+            }
+        }
+    }
+
+    void run() {
+        if (!status.compareAndSet(Status.QUEUED, Status.RUNNING)) {
+            return;
+        }
+        synchronized (workerLock) {
+            worker = Thread.currentThread();
+        }
+        update("Loading file: " + getName());
+        long start = System.nanoTime();
+        AnalysisEventReader events = new AnalysisEventReader(this::onEvent);
+        try {
+            Files.createDirectories(outputDir);
+            byte[] script = readScript();
+            String scriptDigest = script == null ? null : AnalysisCache.hex(AnalysisCache.sha256().digest(script));
+
+            // Rows appended to a file analysed before only need the new rows parsed
+            IncrementalStats appended = scriptDigest != null && IncrementalStats.ENABLED && !DRAW_PNG
+                ? loadAppended(scriptDigest) : null;
+            File featuresFile = appended == null ? loadDataset() : null;
+            processes.checkCancelled();
+
+            // Reuse earlier results for the same file contents and script version
+            String cacheKey = null;
+            if (script != null) {
+                try {
+                    // Results depend on the feature count and plot format too, and on the sample size if any
+                    String settings = "\ntopFeatures=" + PrimaryController.TOP_FEATURE_COUNT + "\npng=" + DRAW_PNG
+                        + (sampleFile != null ? "\nsample=" + DatasetSampler.SAMPLE_ROWS : "");
+                    InputStream keyed = new SequenceInputStream(new ByteArrayInputStream(script),
+                        new ByteArrayInputStream(settings.getBytes(StandardCharsets.UTF_8)));
+                    cacheKey = datasetDigest != null ? AnalysisCache.shared().key(datasetDigest, keyed)
+                        : AnalysisCache.shared().key(dataset, keyed);
+                    datasetDigest = null;
+                    cached = AnalysisCache.shared().restore(cacheKey, outputDir);
+                } catch (IOException e) {
+                    System.err.println("Analysis cache unavailable: " + e.getMessage());
+                }
+            }
+
+            if (cached) {
+                loadMetrics();
+                chartData = ChartData.load(outputDir);
+            } else if (appended != null && applyAppended(appended)) {
+                incremental = true;
+                if (cacheKey != null) {
+                    try {
+                        AnalysisCache.shared().store(cacheKey, outputDir);
+                    } catch (IOException e) {
+                        System.err.println("Could not cache analysis results: " + e.getMessage());
+                    }
+                }
+            } else {
+                if (appended != null) {
+                    // The earlier results are gone from the cache; start over
+                    featuresFile = loadDataset();
+                }
+                update("Analyzing file: " + getName());
+                runStages(featuresFile, events);
+                if (cacheKey != null) {
+                    try {
+                        AnalysisCache.shared().store(cacheKey, outputDir);
+                    } catch (IOException e) {
+                        System.err.println("Could not cache analysis results: " + e.getMessage());
+                    }
+                }
+            }
+            processes.checkCancelled();
+            scheduler.publish(outputDir);
+            saveIncrementalStats(scriptDigest, cacheKey);
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            phaseDurations = events.getPhaseDurations();
+            String result;
+            if (cached) {
+                result = "Showing cached results for: " + getName();
+            } else if (incremental) {
+                result = String.format("Updated %s with %,d appended rows (%.1f s); feature ranking unchanged, "
+                    + "models kept", getName(), stats.getAppendedRows(), seconds);
+            } else {
+                result = String.format("Analysis complete: %s (%.1f s%s)", getName(), seconds,
+                    warningCount > 0 ? String.format(", %d warnings", warningCount) : "");
+            }
+            finish(Status.SUCCEEDED, result);
+        } catch (Exception e) {
+            if (processes.isCancelled() || e instanceof CancellationException || e instanceof InterruptedException) {
+                finish(Status.CANCELLED, "Cancelled: " + getName());
+            } else {
+                String errorMessage = e.getMessage();
+                if (errorMessage != null && errorMessage.contains("python")) {
+                    errorMessage = "Python not found. Please make sure Python is installed and added to your PATH.";
+                }
+                finish(Status.FAILED, "Analysis failed: " + errorMessage);
+            }
+        } finally {
+            synchronized (workerLock) {
+                worker = null;
+                Thread.interrupted();
+            }
+            pin(null);
+            try {
+                AnalysisCache.deleteRecursively(outputDir.resolve("training_data"));
+            } catch (IOException e) {
+                System.err.println("Could not remove training data: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Parses the file and ranks features in-process, so the user gets
+     * immediate feedback and the script can skip its full correlation pass.
+     * Files too large to load are streamed instead: the ranking then uses
+     * exact correlations over every row and the script gets a sample.
+     * Returns the file listing the selected features, or null if there is
+     * no target column; fails if the file cannot be read.
+     */
+    private File loadDataset() throws IOException {
+        File featuresFile = null;
+        Map<String, Double> top = new LinkedHashMap<>();
+        sampleFile = null;
+        datasetDigest = null;
+        correlationFile = null;
+        try {
+            long start = System.nanoTime();
+            ColumnarDataset data;
+            double[] exact = null;
+            large = DatasetSampler.isLarge(dataset);
+            if (large) {
+                pin(DatasetSampler.samplePath(dataset));
+                update("Sampling large file: " + getName());
+                DatasetSampler.Result sampled = DatasetSampler.sample(dataset, PrimaryController.TARGET_COLUMN,
+                    DatasetSampler.SAMPLE_ROWS);
+                data = sampled.getSample();
+                exact = sampled.getCorrelations();
+                sampleFile = DatasetSampler.samplePath(dataset);
+                datasetDigest = sampled.getDigest();
+                summary = sampled.summarize((System.nanoTime() - start) / 1e9);
+            } else {
+                pin(ColumnarFile.pathFor(dataset));
+                data = ColumnarFile.load(dataset);
+                summary = summarize(data, (System.nanoTime() - start) / 1e9);
+            }
+
+            int target = data.indexOf(PrimaryController.TARGET_COLUMN);
+            if (target >= 0) {
+                double[] correlations = exact != null ? exact : CorrelationEngine.targetCorrelations(data, target);
+                int[] selected = CorrelationEngine.topFeatures(correlations, target,
+                    PrimaryController.TOP_FEATURE_COUNT);
+                for (int column : selected) {
+                    top.put(data.getColumnNames().get(column), correlations[column]);
+                }
+                featuresFile = writeSelectedFeatures(top.keySet());
+                correlationFile = writeCorrelation(data, selected, target);
+                if (IncrementalStats.ENABLED && sampleFile == null) {
+                    stats = IncrementalStats.build(dataset, data, target, new ArrayList<>(top.keySet()));
+                    datasetDigest = stats.getContentDigest();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            summary = "Could not read file: " + e.getMessage();
+            ranking = top;
+            notifyStatus();
+            throw new IOException(summary, e);
+        }
+        ranking = top;
+        notifyStatus();
+        return featuresFile;
+    }
+
+    /**
+     * Folds the rows appended since the file was last analysed into its
+     * saved statistics. Returns them if the feature ranking is unchanged, so
+     * the earlier models still apply; otherwise null, and the file is
+     * analysed in full.
+     */
+    private IncrementalStats loadAppended(String scriptDigest) {
+        IncrementalStats previous = IncrementalStats.load(dataset, scriptDigest);
+        if (previous == null) {
+            return null;
+        }
+        try {
+            long start = System.nanoTime();
+            if (!previous.appendFrom(dataset)) {
+                return null;
+            }
+            Map<String, Double> top = previous.ranking(PrimaryController.TOP_FEATURE_COUNT);
+            // New histogram edges also need the script, which redraws everything
+            if (!new ArrayList<>(top.keySet()).equals(previous.getTopFeatures()) || !previous.areHistogramsInRange()) {
+                return null;
+            }
+            Metrics.timer("incremental.append").recordSince(start);
+            summary = previous.summarize((System.nanoTime() - start) / 1e9);
+            ranking = top;
+            stats = previous;
+            datasetDigest = previous.getContentDigest();
+            notifyStatus();
+            return previous;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Incremental update failed, analysing in full: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Restores the results the statistics were saved with and refreshes the
+     * heatmap and histograms from them. Returns false if those results are
+     * no longer cached.
+     */
+    private boolean applyAppended(IncrementalStats appended) throws IOException {
+        if (appended.getCacheKey() == null || !AnalysisCache.shared().restore(appended.getCacheKey(), outputDir)) {
+            return false;
+        }
+        ChartData data = ChartData.load(outputDir);
+        if (data == null) {
+            data = new ChartData();
+        }
+        data.setCorrelation(appended.correlation());
+        data.setDistributions(appended.getHistograms());
+        data.save(outputDir);
+        loadMetrics();
+        chartData = data;
+        return true;
+    }
+
+    private void saveIncrementalStats(String scriptDigest, String cacheKey) {
+        ChartData data = chartData;
+        if (stats == null || cacheKey == null || data == null || data.getDistributions() == null) {
+            return;
+        }
+        try {
+            stats.save(dataset, scriptDigest, cacheKey, data.getDistributions());
+        } catch (IOException e) {
+            System.err.println("Could not save incremental statistics: " + e.getMessage());
+        }
+    }
+
+    /** Pins the given file in place of the one pinned before, if any. */
+    private void pin(Path file) {
+        if (pinnedFile != null) {
+            AnalysisCache.unpin(pinnedFile);
+        }
+        pinnedFile = file;
+        if (file != null) {
+            AnalysisCache.pin(file);
+        }
+    }
+
+    private byte[] readScript() {
+        try (InputStream script = getClass().getResourceAsStream(PrimaryController.SCRIPT_RESOURCE)) {
+            return script == null ? null : script.readAllBytes();
+        } catch (IOException e) {
+            System.err.println("Analysis cache unavailable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void runStages(File featuresFile, AnalysisEventReader events) throws IOException, InterruptedException {
+        String scriptPath = ScriptRunner.scriptPath(PrimaryController.SCRIPT_RESOURCE);
+
+        // The script maps the columnar copy (or sample) written by loadDataset rather than parsing the CSV again.
+        // A file too large to load must never reach the script whole.
+        Path columnar = sampleFile != null ? sampleFile : ColumnarFile.pathFor(dataset);
+        boolean current = ColumnarFile.isCurrent(columnar, dataset);
+        if (large && (sampleFile == null || !current)) {
+            throw new IOException("The sample of " + getName() + " is missing or out of date; analyze the file again");
+        }
+        Path input = current ? columnar : dataset;
+        List<String> prepareArgs = new ArrayList<>(Arrays.asList(
+            "--stage", "prepare", input.toString(), "--output-dir", outputDir.toString()));
+        if (!DRAW_PNG) {
+            prepareArgs.add("--no-png");
+        }
+        if (featuresFile != null) {
+            prepareArgs.add("--features");
+            prepareArgs.add(featuresFile.getAbsolutePath());
+            if (correlationFile != null) {
+                prepareArgs.add("--correlation");
+                prepareArgs.add(correlationFile.getAbsolutePath());
+            }
+        }
+        String prepareOutput = ScriptRunner.run(scriptPath, prepareArgs, events, processes);
+        AnalysisEvent modelsEvent = AnalysisEvent.find(prepareOutput, AnalysisEvent.MODELS);
+        if (modelsEvent == null) {
+            throw new IOException("The prepare stage did not list any models:\n" + prepareOutput);
+        }
+        Type listType = new TypeToken<List<String>>(){}.getType();
+        List<String> models = new Gson().fromJson(modelsEvent.get("models"), listType);
+        JsonElement candidates = modelsEvent.get("candidates");
+        Map<String, JsonArray> space = new LinkedHashMap<>();
+        for (String model : models) {
+            JsonElement modelCandidates = candidates != null && candidates.isJsonObject()
+                ? candidates.getAsJsonObject().get(model) : null;
+            space.put(model, modelCandidates != null && modelCandidates.isJsonArray()
+                ? modelCandidates.getAsJsonArray() : new JsonArray());
+        }
+
+        update("Searching hyperparameters: " + getName());
+        HyperparameterSearch result = HyperparameterSearch.run(scriptPath, outputDir, space, events, processes);
+        search = result;
+        update("Training models: " + getName());
+        Map<String, Map<String, Double>> results =
+            TrainingScheduler.trainAll(scriptPath, outputDir, models, result.getChosen(), events, processes);
+        synchronized (this) {
+            metrics.clear();
+            metrics.putAll(results);
+        }
+        Files.write(outputDir.resolve("model_metrics.json"),
+            new Gson().toJson(results).getBytes(StandardCharsets.UTF_8));
+        ScriptRunner.run(scriptPath, Arrays.asList("--stage", "save_best", "--model", result.getBestModel(),
+            "--output-dir", outputDir.toString()), events, processes);
+        result.save(outputDir);
+        if (DRAW_PNG) {
+            ScriptRunner.run(scriptPath, Arrays.asList("--stage", "finalize", "--output-dir", outputDir.toString()),
+                events, processes);
+        }
+    }
+
+    private void loadMetrics() throws IOException {
+        String json = new String(Files.readAllBytes(outputDir.resolve("model_metrics.json")), StandardCharsets.UTF_8);
+        Type metricsType = new TypeToken<Map<String, Map<String, Double>>>(){}.getType();
+        long start = System.nanoTime();
+        Map<String, Map<String, Double>> results = new Gson().fromJson(json, metricsType);
+        Metrics.timer("json.model_metrics").recordSince(start);
+        synchronized (this) {
+            metrics.clear();
+            metrics.putAll(results);
+        }
+        search = HyperparameterSearch.load(outputDir);
+    }
+
+    private static File writeSelectedFeatures(Collection<String> features) throws IOException {
+        File file = File.createTempFile("selected_features", ".json");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new Gson().toJson(features).getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * Computes the heatmap's correlation matrix of the selected features and
+     * the target, over rows with a known target as the script's was, and
+     * writes it for the prepare stage to use instead of its own pass.
+     */
+    private static File writeCorrelation(ColumnarDataset data, int[] features, int target) throws IOException {
+        int[] columns = Arrays.copyOf(features, features.length + 1);
+        columns[features.length] = target;
+        ChartData.Correlation correlation = new ChartData.Correlation();
+        correlation.labels = new ArrayList<>();
+        for (int column : columns) {
+            correlation.labels.add(data.getColumnNames().get(column));
+        }
+        long start = System.nanoTime();
+        correlation.matrix = CorrelationEngine.matrix(data, columns, target);
+        Metrics.timer("correlation.matrix").recordSince(start);
+
+        File file = File.createTempFile("correlation", ".json");
+        file.deleteOnExit();
+        Gson gson = new GsonBuilder().serializeSpecialFloatingPointValues().create();
+        Files.write(file.toPath(), gson.toJson(correlation).getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String summarize(ColumnarDataset dataset, double seconds) {
+        StringBuilder summary = new StringBuilder(String.format(
+            "%,d rows, %d numeric columns (%d dropped), %,d missing values - read in %.2f s",
+            dataset.getRowCount(), dataset.getColumnCount(), dataset.getDroppedColumns().size(),
+            dataset.getTotalMissingCount(), seconds));
+
+        int target = dataset.indexOf(PrimaryController.TARGET_COLUMN);
+        if (target >= 0) {
+            ColumnarDataset.ColumnStats stats = dataset.getStats(target);
+            summary.append(String.format(
+                "\nInfant mortality rate: mean %.2f, std %.2f, min %.2f, max %.2f (%,d missing)",
+                stats.getMean(), stats.getStd(), stats.getMin(), stats.getMax(), stats.getMissing()));
+        } else {
+            summary.append("\nWarning: no numeric \"" + PrimaryController.TARGET_COLUMN + "\" column found");
+        }
+        return summary.toString();
+    }
+
+    // Called on the FX thread with each batch of script events
+    private void onEvent(AnalysisEvent event) {
+        switch (event.getType()) {
+            case AnalysisEvent.PHASE_STARTED:
+                String model = event.getString("model");
+                message = "Running: " + event.getString("phase").replace('_', ' ')
+                    + (model != null ? " (" + model + ")" : "");
+                break;
+            case AnalysisEvent.CHART_DATA:
+                ChartData data = chartData == null ? new ChartData() : chartData;
+                data.update(event.getString("chart"), event.get("data"));
+                chartData = data;
+                break;
+            case AnalysisEvent.MODEL_METRICS:
+                Type metricsType = new TypeToken<Map<String, Double>>(){}.getType();
+                Map<String, Double> modelMetrics = new Gson().fromJson(event.get("metrics"), metricsType);
+                synchronized (this) {
+                    metrics.put(event.getString("model"), modelMetrics);
+                }
+                break;
+            case AnalysisEvent.WARNING:
+                warningCount++;
+                System.err.println("Analysis warning (" + getName() + "): " + event.getString("message"));
+                break;
+            default:
+                break;
+        }
+        Listener current = listener;
+        if (current != null) {
+            current.onEvent(this, event);
+            if (AnalysisEvent.PHASE_STARTED.equals(event.getType())) {
+                current.onStatusChanged(this);
+            }
+        }
+    }
+
+    private void update(String newMessage) {
+        message = newMessage;
+        notifyStatus();
+    }
+
+    private void finish(Status result, String newMessage) {
+        message = newMessage;
+        status.set(result);
+        notifyStatus();
+    }
+
+    private void notifyStatus() {
+        Platform.runLater(() -> {
+            Listener current = listener;
+            if (current != null) {
+                current.onStatusChanged(this);
+            }
+        });
+    }
+}
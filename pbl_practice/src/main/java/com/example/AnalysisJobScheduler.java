@@ -0,0 +1,200 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Runs analysis jobs in the background, several at a time. Each job writes
+ * to its own directory under analysis_runs/, and a successful job copies its
+ * artifacts to output_plots/, where the prediction page reads them; the
+ * last job to finish wins. The number of concurrent jobs is capped by the
+ * pbl.jobs.max system property (half the cores by default) and their
+ * training processes share one per-core pool.
+ *
+ * A failed or cancelled job is dropped and its directory deleted. A job
+ * that succeeded keeps only its plot PNGs, which the screen still shows
+ * from there, and stays listed until it is one of more than pbl.jobs.keep
+ * (default 10) finished jobs. Directories left behind by an earlier session that crashed are swept on
+ * startup, which assumes one app instance per working directory, as
+ * output_plots/ already does.
+ */
+public final class AnalysisJobScheduler {
+
+    static final Path RUNS_DIR = Paths.get("analysis_runs");
+    static final int KEEP_FINISHED = Math.max(0, Integer.getInteger("pbl.jobs.keep", 10));
+
+    private static AnalysisJobScheduler shared;
+
+    private final ExecutorService executor;
+    private final List<AnalysisJob> jobs = new CopyOnWriteArrayList<>();
+    /** Succeeded jobs still listed for their plots, oldest first; guarded by itself. */
+    private final Deque<AnalysisJob> kept = new ArrayDeque<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final Path publishDir;
+
+    AnalysisJobScheduler(int maxConcurrentJobs, Path publishDir) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(maxConcurrentJobs, runnable -> {
+            Thread thread = new Thread(runnable, "analysis-job-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.publishDir = publishDir;
+        sweepRuns();
+    }
+
+    /** Removes job directories left behind by an earlier session. */
+    private static void sweepRuns() {
+        if (!Files.isDirectory(RUNS_DIR)) {
+            return;
+        }
+        try (Stream<Path> children = Files.list(RUNS_DIR)) {
+            for (Path child : (Iterable<Path>) children::iterator) {
+                if (child.getFileName().toString().startsWith("job")) {
+                    AnalysisCache.deleteRecursively(child);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not clean " + RUNS_DIR + ": " + e.getMessage());
+        }
+    }
+
+    static synchronized AnalysisJobScheduler shared() {
+        if (shared == null) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            shared = new AnalysisJobScheduler(Math.max(1, Integer.getInteger("pbl.jobs.max", cores / 2)),
+                Paths.get(PrimaryController.OUTPUT_DIR));
+        }
+        return shared;
+    }
+
+    static synchronized void shutdownShared() {
+        if (shared != null) {
+            shared.shutdown();
+            shared = null;
+        }
+    }
+
+    /**
+     * Queues an analysis of the dataset and returns its job.
+     */
+    public AnalysisJob submit(Path dataset) throws IOException {
+        int id = nextId.incrementAndGet();
+        Files.createDirectories(RUNS_DIR);
+        Path outputDir = Files.createTempDirectory(RUNS_DIR, "job" + id + "-");
+        AnalysisJob job = new AnalysisJob(id, dataset, outputDir, this);
+        jobs.add(job);
+        executor.execute(() -> {
+            try {
+                job.run();
+            } finally {
+                retire(job);
+            }
+        });
+        return job;
+    }
+
+    /**
+     * Trims a finished job's directory down to its plots, or forgets the job
+     * and deletes the directory if it has none to show. Also forgets the
+     * oldest kept jobs beyond pbl.jobs.keep.
+     */
+    private void retire(AnalysisJob job) {
+        List<AnalysisJob> dropped = new ArrayList<>();
+        if (job.getStatus() == AnalysisJob.Status.SUCCEEDED && keepPlots(job.getOutputDir())) {
+            synchronized (kept) {
+                kept.addLast(job);
+                while (kept.size() > KEEP_FINISHED) {
+                    dropped.add(kept.removeFirst());
+                }
+            }
+        } else {
+            dropped.add(job);
+        }
+        for (AnalysisJob old : dropped) {
+            jobs.remove(old);
+            try {
+                AnalysisCache.deleteRecursively(old.getOutputDir());
+            } catch (IOException e) {
+                System.err.println("Could not remove " + old.getOutputDir() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /** Deletes everything but the plot PNGs from a job directory; returns whether any plot is left. */
+    private static boolean keepPlots(Path outputDir) {
+        Set<String> plots = new HashSet<>();
+        for (String plot : PrimaryController.PLOTS) {
+            plots.add(plot + ".png");
+        }
+        boolean any = false;
+        try (Stream<Path> children = Files.list(outputDir)) {
+            for (Path child : (Iterable<Path>) children::iterator) {
+                if (plots.contains(child.getFileName().toString())) {
+                    any = true;
+                } else {
+                    AnalysisCache.deleteRecursively(child);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not clean " + outputDir + ": " + e.getMessage());
+        }
+        return any;
+    }
+
+    /** The queued and running jobs and the finished ones kept for their plots, oldest first. */
+    public List<AnalysisJob> getJobs() {
+        return jobs;
+    }
+
+    /**
+     * Copies a finished job's artifacts to the shared output directory.
+     * Artifacts the job did not produce are removed, so a model from an
+     * earlier dataset is never paired with this dataset's feature names.
+     */
+    synchronized void publish(Path outputDir) throws IOException {
+        Files.createDirectories(publishDir);
+        for (String artifact : AnalysisCache.ARTIFACTS) {
+            Path source = outputDir.resolve(artifact);
+            Path target = publishDir.resolve(artifact);
+            if (Files.exists(source)) {
+                Path staging = publishDir.resolve(artifact + ".tmp");
+                Files.copy(source, staging, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(staging, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                Files.deleteIfExists(target);
+            }
+        }
+    }
+
+    /**
+     * Cancels all jobs and removes their output directories.
+     */
+    void shutdown() {
+        for (AnalysisJob job : jobs) {
+            job.cancel();
+        }
+        executor.shutdownNow();
+        for (AnalysisJob job : jobs) {
+            try {
+                AnalysisCache.deleteRecursively(job.getOutputDir());
+            } catch (IOException e) {
+                System.err.println("Could not remove " + job.getOutputDir() + ": " + e.getMessage());
+            }
+        }
+    }
+}
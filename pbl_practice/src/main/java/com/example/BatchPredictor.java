@@ -0,0 +1,353 @@
+package com.example;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Scores every row of a CSV file and streams the rows, with a prediction
+ * column appended, to an output CSV. Rows are read in fixed-size chunks so
+ * memory use does not depend on the file size; each chunk is scored across
+ * all cores with the in-process forest, or handed to the Python worker as
+ * one shared matrix when no exported forest is available.
+ *
+ * With the forest, each row also gets one TreeSHAP contribution column per
+ * feature (see {@link ForestModel#explain}) unless pbl.batch.explain is
+ * false.
+ */
+public class BatchPredictor {
+
+    static final String PREDICTION_COLUMN = "Predicted infant mortality rate (per 1000 live births)";
+
+    static final String CONTRIBUTION_PREFIX = "SHAP: ";
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final List<String> featureNames;
+    private final ForestModel forest;
+    private final boolean explain;
+
+    public BatchPredictor(List<String> featureNames, ForestModel forest) {
+        this.featureNames = featureNames;
+        this.forest = forest;
+        this.explain = forest != null && forest.canExplain()
+            && Boolean.parseBoolean(System.getProperty("pbl.batch.explain", "true"));
+    }
+
+    public static final class Result {
+        private final long rows;
+        private final long skipped;
+        private final double seconds;
+
+        Result(long rows, long skipped, double seconds) {
+            this.rows = rows;
+            this.skipped = skipped;
+            this.seconds = seconds;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getSkipped() {
+            return skipped;
+        }
+
+        public double getSeconds() {
+            return seconds;
+        }
+
+        public double getRowsPerSecond() {
+            return seconds > 0 ? rows / seconds : rows;
+        }
+    }
+
+    /**
+     * Runs the batch, reporting progress in [0, 1] based on bytes read.
+     */
+    public Result run(Path input, Path output, DoubleConsumer progress) throws IOException {
+        long start = System.nanoTime();
+        long totalBytes = Math.max(1, Files.size(input));
+        long rows = 0;
+        long skipped = 0;
+
+        try (CountingInputStream in = new CountingInputStream(Files.newInputStream(input));
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+             BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            String header = readRecord(reader);
+            if (header == null) {
+                throw new IOException("The selected file is empty");
+            }
+            if (header.startsWith("\uFEFF")) {
+                header = header.substring(1);
+            }
+            int[] columns = mapColumns(splitLine(header));
+
+            writer.write(header);
+            writer.write(",\"" + PREDICTION_COLUMN + "\"");
+            if (explain) {
+                for (String feature : featureNames) {
+                    writer.write(",\"" + (CONTRIBUTION_PREFIX + feature).replace("\"", "\"\"") + "\"");
+                }
+            }
+            writer.newLine();
+
+            String[] lines = new String[CHUNK_SIZE];
+            double[] predictions = new double[CHUNK_SIZE];
+            double[][] contributions = explain ? new double[CHUNK_SIZE][] : null;
+            while (true) {
+                int count = 0;
+                String line;
+                while (count < CHUNK_SIZE && (line = readRecord(reader)) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    lines[count++] = line;
+                }
+                if (count == 0) {
+                    break;
+                }
+
+                scoreChunk(lines, count, columns, predictions, contributions);
+
+                for (int i = 0; i < count; i++) {
+                    writer.write(lines[i]);
+                    writer.write(',');
+                    if (Double.isNaN(predictions[i])) {
+                        skipped++;
+                    } else {
+                        writer.write(Double.toString(predictions[i]));
+                    }
+                    if (explain) {
+                        for (int f = 0; f < featureNames.size(); f++) {
+                            writer.write(',');
+                            if (contributions[i] != null) {
+                                writer.write(Double.toString(contributions[i][f]));
+                            }
+                        }
+                    }
+                    writer.newLine();
+                }
+                rows += count;
+                // Bytes the reader has buffered, so progress runs at most one buffer ahead
+                progress.accept(Math.min(1.0, (double) in.getCount() / totalBytes));
+            }
+        }
+
+        progress.accept(1.0);
+        return new Result(rows, skipped, (System.nanoTime() - start) / 1e9);
+    }
+
+    private void scoreChunk(String[] lines, int count, int[] columns, double[] predictions,
+                            double[][] contributions) throws IOException {
+        if (forest != null) {
+            // Timed per chunk: a shared timer updated per row from every core would be the bottleneck
+            long start = System.nanoTime();
+            IntStream.range(0, count).parallel().forEach(i -> {
+                double[] features = parseFeatures(lines[i], columns);
+                predictions[i] = features == null ? Double.NaN : forest.predict(features);
+                if (contributions != null) {
+                    contributions[i] = features == null ? null : forest.explain(features);
+                }
+            });
+            Metrics.timer("predict.forest.chunk").recordSince(start);
+            return;
+        }
+
+        // No exported forest: hand the chunk's complete rows to the Python worker as one shared matrix
+        List<double[]> rows = new ArrayList<>(count);
+        int[] rowOf = new int[count];
+        for (int i = 0; i < count; i++) {
+            double[] features = parseFeatures(lines[i], columns);
+            rowOf[i] = features == null ? -1 : rows.size();
+            if (features != null) {
+                rows.add(features);
+            }
+        }
+        double[] scored;
+        try {
+            scored = rows.isEmpty() ? new double[0]
+                : PredictionWorker.shared().predictBatch(featureNames, rows.toArray(new double[0][])).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Batch prediction interrupted", e);
+        } catch (java.util.concurrent.ExecutionException e) {
+            throw new IOException("Prediction worker failed: " + e.getCause().getMessage(), e);
+        }
+        for (int i = 0; i < count; i++) {
+            predictions[i] = rowOf[i] < 0 ? Double.NaN : scored[rowOf[i]];
+        }
+    }
+
+    /**
+     * Returns the input column index for each model feature, matching names
+     * while ignoring case and repeated whitespace.
+     */
+    private int[] mapColumns(List<String> header) throws IOException {
+        int[] columns = new int[featureNames.size()];
+        List<String> missing = new ArrayList<>();
+        for (int f = 0; f < columns.length; f++) {
+            columns[f] = header.indexOf(featureNames.get(f));
+            if (columns[f] < 0) {
+                String wanted = normalize(featureNames.get(f));
+                for (int c = 0; c < header.size(); c++) {
+                    if (normalize(header.get(c)).equals(wanted)) {
+                        columns[f] = c;
+                        break;
+                    }
+                }
+            }
+            if (columns[f] < 0) {
+                missing.add(featureNames.get(f));
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new IOException("The file is missing required columns:\n" + String.join("\n", missing));
+        }
+        return columns;
+    }
+
+    private static String normalize(String name) {
+        return name.trim().replaceAll("\\s+", " ").toLowerCase();
+    }
+
+    /**
+     * Parses the model features out of one row, or returns null if any of
+     * them is missing or not a number.
+     */
+    private double[] parseFeatures(String line, int[] columns) {
+        List<String> fields = splitLine(line);
+        double[] features = new double[columns.length];
+        for (int f = 0; f < columns.length; f++) {
+            if (columns[f] >= fields.size()) {
+                return null;
+            }
+            String value = fields.get(columns[f]).trim();
+            if (value.isEmpty()) {
+                return null;
+            }
+            try {
+                features[f] = Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (Double.isNaN(features[f])) {
+                return null;
+            }
+        }
+        return features;
+    }
+
+    /**
+     * Reads one CSV record, joining lines while a quoted field is still
+     * open so that newlines inside quotes stay in their field.
+     */
+    static String readRecord(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            return null;
+        }
+        int quotes = countQuotes(line);
+        if ((quotes & 1) == 0) {
+            return line;
+        }
+        StringBuilder record = new StringBuilder(line);
+        String next;
+        while ((quotes & 1) == 1 && (next = reader.readLine()) != null) {
+            record.append('\n').append(next);
+            quotes += countQuotes(next);
+        }
+        return record.toString();
+    }
+
+    private static int countQuotes(String line) {
+        int quotes = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '"') {
+                quotes++;
+            }
+        }
+        return quotes;
+    }
+
+    /** Counts the bytes read from the file, for progress. */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * Splits a single CSV record, honouring double-quoted fields.
+     */
+    static List<String> splitLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c != '\r') {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
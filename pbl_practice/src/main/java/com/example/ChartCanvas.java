@@ -0,0 +1,116 @@
+package com.example;
+
+import javafx.geometry.Orientation;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+
+/**
+ * Base class for the charts drawn from in-memory data. The canvas takes the
+ * width its container gives it, asks for the height it needs at that width,
+ * and repaints whenever it is resized.
+ */
+abstract class ChartCanvas extends Canvas {
+
+    static final Font LABEL_FONT = Font.font(11);
+    static final Font TITLE_FONT = Font.font(null, javafx.scene.text.FontWeight.BOLD, 12);
+    static final Color TEXT_COLOR = Color.web("#2c3e50");
+    static final Color GRID_COLOR = Color.web("#dddddd");
+
+    private static final double MIN_WIDTH = 200;
+
+    ChartCanvas() {
+        widthProperty().addListener(observable -> repaint());
+        heightProperty().addListener(observable -> repaint());
+    }
+
+    /** Height the chart needs when drawn at the given width. */
+    abstract double heightFor(double width);
+
+    abstract void paint(GraphicsContext g, double width, double height);
+
+    final void repaint() {
+        GraphicsContext g = getGraphicsContext2D();
+        g.clearRect(0, 0, getWidth(), getHeight());
+        if (getWidth() > 0 && getHeight() > 0) {
+            paint(g, getWidth(), getHeight());
+        }
+    }
+
+    @Override
+    public boolean isResizable() {
+        return true;
+    }
+
+    @Override
+    public Orientation getContentBias() {
+        return Orientation.HORIZONTAL;
+    }
+
+    @Override
+    public double minWidth(double height) {
+        return MIN_WIDTH;
+    }
+
+    @Override
+    public double prefWidth(double height) {
+        return PrimaryController.PLOT_WIDTH;
+    }
+
+    @Override
+    public double maxWidth(double height) {
+        return Double.MAX_VALUE;
+    }
+
+    @Override
+    public double minHeight(double width) {
+        return prefHeight(width);
+    }
+
+    @Override
+    public double prefHeight(double width) {
+        return heightFor(width < 0 ? PrimaryController.PLOT_WIDTH : width);
+    }
+
+    @Override
+    public double maxHeight(double width) {
+        return prefHeight(width);
+    }
+
+    @Override
+    public void resize(double width, double height) {
+        setWidth(width);
+        setHeight(height);
+    }
+
+    /**
+     * Shortens text with an ellipsis so it fits roughly in the given width.
+     */
+    static String fit(String text, double width) {
+        int maxChars = Math.max(3, (int) (width / 6));
+        return text.length() <= maxChars ? text : text.substring(0, maxChars - 1) + "…";
+    }
+
+    /**
+     * The "coolwarm" diverging scale: blue at -1, grey at 0, red at +1.
+     */
+    static Color coolwarm(double value) {
+        if (Double.isNaN(value)) {
+            return Color.WHITE;
+        }
+        double t = Math.max(-1, Math.min(1, value));
+        Color cool = Color.rgb(59, 76, 192);
+        Color neutral = Color.rgb(221, 221, 221);
+        Color warm = Color.rgb(180, 4, 38);
+        return t < 0 ? neutral.interpolate(cool, -t) : neutral.interpolate(warm, t);
+    }
+
+    static String formatNumber(double value) {
+        double magnitude = Math.abs(value);
+        if (magnitude >= 1e5 || (magnitude > 0 && magnitude < 1e-2)) {
+            return String.format("%.1e", value);
+        }
+        return magnitude >= 100 ? String.format("%.0f", value) : String.format("%.2f", value);
+    }
+}
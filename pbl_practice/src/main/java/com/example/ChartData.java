@@ -0,0 +1,158 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * The numbers behind the data charts, as written to chart_data.json and
+ * sent in chart_data events by infant_mortality_analysis.py. Sections are
+ * null until the script has computed them.
+ */
+public final class ChartData {
+
+    static final String FILE_NAME = "chart_data.json";
+
+    static final String DISTRIBUTIONS = "distributions";
+    static final String CORRELATION = "correlation";
+    static final String IMPORTANCE = "importance";
+
+    /** A 20-bin histogram of one feature; edges has one more entry than counts. */
+    public static final class Distribution {
+        String feature;
+        double[] edges;
+        long[] counts;
+
+        public String getFeature() {
+            return feature;
+        }
+
+        public double[] getEdges() {
+            return edges;
+        }
+
+        public long[] getCounts() {
+            return counts;
+        }
+    }
+
+    /** Pairwise correlations of the selected features and the target. */
+    public static final class Correlation {
+        List<String> labels;
+        double[][] matrix;
+
+        public List<String> getLabels() {
+            return labels;
+        }
+
+        public double[][] getMatrix() {
+            return matrix;
+        }
+    }
+
+    /** Random forest feature importances, in ranking order. */
+    public static final class Importance {
+        List<String> features;
+        double[] values;
+
+        public List<String> getFeatures() {
+            return features;
+        }
+
+        public double[] getValues() {
+            return values;
+        }
+    }
+
+    private volatile List<Distribution> distributions;
+    private volatile Correlation correlation;
+    private volatile Importance importance;
+
+    /**
+     * Reads chart_data.json from an output directory, or returns null if
+     * there is none (for example results of a run that only drew PNGs).
+     */
+    static ChartData load(Path outputDir) throws IOException {
+        Path file = outputDir.resolve(FILE_NAME);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        long start = System.nanoTime();
+        JsonObject json = JsonParser.parseString(text).getAsJsonObject();
+        ChartData data = new ChartData();
+        for (String chart : json.keySet()) {
+            data.update(chart, json.get(chart));
+        }
+        Metrics.timer("json.chart_data").recordSince(start);
+        return data;
+    }
+
+    /**
+     * Stores one section from a chart_data event; unknown charts are ignored.
+     */
+    void update(String chart, JsonElement json) {
+        Gson gson = new Gson();
+        switch (chart) {
+            case DISTRIBUTIONS:
+                distributions = gson.fromJson(json, new TypeToken<List<Distribution>>(){}.getType());
+                break;
+            case CORRELATION:
+                correlation = gson.fromJson(json, Correlation.class);
+                break;
+            case IMPORTANCE:
+                importance = gson.fromJson(json, Importance.class);
+                break;
+            default:
+                break;
+        }
+    }
+
+    void setDistributions(List<Distribution> distributions) {
+        this.distributions = distributions;
+    }
+
+    void setCorrelation(Correlation correlation) {
+        this.correlation = correlation;
+    }
+
+    /**
+     * Writes the sections computed so far to chart_data.json, with NaN
+     * written the way the script's json.dump writes it.
+     */
+    void save(Path outputDir) throws IOException {
+        Gson gson = new GsonBuilder().serializeSpecialFloatingPointValues().create();
+        JsonObject json = new JsonObject();
+        if (distributions != null) {
+            json.add(DISTRIBUTIONS, gson.toJsonTree(distributions));
+        }
+        if (correlation != null) {
+            json.add(CORRELATION, gson.toJsonTree(correlation));
+        }
+        if (importance != null) {
+            json.add(IMPORTANCE, gson.toJsonTree(importance));
+        }
+        Files.write(outputDir.resolve(FILE_NAME), gson.toJson(json).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public List<Distribution> getDistributions() {
+        return distributions;
+    }
+
+    public Correlation getCorrelation() {
+        return correlation;
+    }
+
+    public Importance getImportance() {
+        return importance;
+    }
+}
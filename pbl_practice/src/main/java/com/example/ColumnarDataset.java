@@ -0,0 +1,177 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Numeric columns of a CSV file held as one primitive array per column.
+ * Missing values are stored as NaN and additionally flagged in a per-column
+ * null bitmap (bit set = missing).
+ */
+public final class ColumnarDataset {
+
+    private final List<String> names;
+    private final List<String> droppedColumns;
+    private final double[][] columns;
+    private final long[][] nulls;
+    private final int rowCount;
+
+    ColumnarDataset(List<String> names, List<String> droppedColumns, double[][] columns, int rowCount) {
+        this(names, droppedColumns, columns, nullBitmaps(columns, rowCount), rowCount);
+    }
+
+    /** With the null bitmaps already known, e.g. read from a {@link ColumnarFile}. */
+    ColumnarDataset(List<String> names, List<String> droppedColumns, double[][] columns, long[][] nulls,
+                    int rowCount) {
+        this.names = Collections.unmodifiableList(new ArrayList<>(names));
+        this.droppedColumns = Collections.unmodifiableList(new ArrayList<>(droppedColumns));
+        this.columns = columns;
+        this.rowCount = rowCount;
+        this.nulls = nulls;
+    }
+
+    private static long[][] nullBitmaps(double[][] columns, int rowCount) {
+        long[][] nulls = new long[columns.length][];
+        for (int c = 0; c < columns.length; c++) {
+            long[] bits = new long[(rowCount + 63) >>> 6];
+            double[] values = columns[c];
+            for (int r = 0; r < rowCount; r++) {
+                if (Double.isNaN(values[r])) {
+                    bits[r >>> 6] |= 1L << r;
+                }
+            }
+            nulls[c] = bits;
+        }
+        return nulls;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public List<String> getColumnNames() {
+        return names;
+    }
+
+    /**
+     * Columns that were present in the file but dropped because they were
+     * unnamed or not numeric, mirroring the analysis script.
+     */
+    public List<String> getDroppedColumns() {
+        return droppedColumns;
+    }
+
+    public int indexOf(String name) {
+        return names.indexOf(name);
+    }
+
+    /**
+     * Returns the backing array of a column (length >= row count, NaN for
+     * missing values). Callers must not modify it.
+     */
+    public double[] getColumn(int column) {
+        return columns[column];
+    }
+
+    /** The backing null bitmap of a column (bit set = missing). Callers must not modify it. */
+    long[] getNullBitmap(int column) {
+        return nulls[column];
+    }
+
+    public boolean isMissing(int column, int row) {
+        return (nulls[column][row >>> 6] & (1L << row)) != 0;
+    }
+
+    public int getMissingCount(int column) {
+        int missing = 0;
+        for (long word : nulls[column]) {
+            missing += Long.bitCount(word);
+        }
+        return missing;
+    }
+
+    public long getTotalMissingCount() {
+        long missing = 0;
+        for (int c = 0; c < columns.length; c++) {
+            missing += getMissingCount(c);
+        }
+        return missing;
+    }
+
+    public ColumnStats getStats(int column) {
+        double[] values = columns[column];
+        int count = 0;
+        double mean = 0;
+        double m2 = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int r = 0; r < rowCount; r++) {
+            double value = values[r];
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            count++;
+            double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        return new ColumnStats(names.get(column), count, rowCount - count, mean,
+            count > 1 ? Math.sqrt(m2 / (count - 1)) : Double.NaN, min, max);
+    }
+
+    public static final class ColumnStats {
+        private final String name;
+        private final int count;
+        private final int missing;
+        private final double mean;
+        private final double std;
+        private final double min;
+        private final double max;
+
+        ColumnStats(String name, int count, int missing, double mean, double std, double min, double max) {
+            this.name = name;
+            this.count = count;
+            this.missing = missing;
+            this.mean = count > 0 ? mean : Double.NaN;
+            this.std = std;
+            this.min = count > 0 ? min : Double.NaN;
+            this.max = count > 0 ? max : Double.NaN;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getMissing() {
+            return missing;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        /** Sample standard deviation (ddof = 1), as pandas reports it. */
+        public double getStd() {
+            return std;
+        }
+
+        public double getMin() {
+            return min;
+        }
+
+        public double getMax() {
+            return max;
+        }
+    }
+}
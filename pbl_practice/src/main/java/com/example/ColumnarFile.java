@@ -0,0 +1,242 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary columnar copy of a parsed CSV file (.pblc), so that reopening a
+ * dataset maps it instead of parsing text again. Kept in the analysis cache
+ * directory, one per source file, and valid while the source's size and
+ * modification time are unchanged. infant_mortality_analysis.py reads the
+ * same file with numpy.memmap.
+ *
+ * Layout, little-endian:
+ * <pre>
+ *   "PBLC", int version, int columns, int dropped columns,
+ *   long rows, long source size, long source modification time (ms),
+ *   column names then dropped column names (int length + UTF-8 bytes),
+ *   zero padding to a multiple of 8,
+ *   each column's values as rows doubles (NaN = missing),
+ *   each column's null bitmap as (rows + 63) / 64 longs (bit set = missing)
+ * </pre>
+ */
+final class ColumnarFile {
+
+    static final String EXTENSION = ".pblc";
+
+    private static final byte[] MAGIC = "PBLC".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int FIXED_HEADER = 40;
+
+    private ColumnarFile() {
+    }
+
+    /**
+     * Loads a CSV file from its columnar copy when that is up to date, and
+     * otherwise parses it and writes the copy for next time.
+     */
+    static ColumnarDataset load(Path csv) throws IOException {
+        Path columnar = pathFor(csv);
+        long start = System.nanoTime();
+        if (isCurrent(columnar, csv)) {
+            try {
+                ColumnarDataset data = read(columnar);
+                Files.setLastModifiedTime(columnar, FileTime.fromMillis(System.currentTimeMillis()));
+                Metrics.timer("dataset.load.columnar").recordSince(start);
+                return data;
+            } catch (IOException e) {
+                System.err.println("Ignoring unreadable columnar copy " + columnar + ": " + e.getMessage());
+            }
+        }
+
+        ColumnarDataset data = CsvLoader.load(csv);
+        Metrics.timer("dataset.load.csv").recordSince(start);
+        try {
+            write(data, columnar, Files.size(csv), Files.getLastModifiedTime(csv).toMillis());
+            AnalysisCache.shared().evict(columnar);
+        } catch (IOException e) {
+            System.err.println("Could not write columnar copy of " + csv + ": " + e.getMessage());
+        }
+        return data;
+    }
+
+    /** Where the columnar copy of a CSV file is kept. */
+    static Path pathFor(Path csv) {
+        byte[] path = csv.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8);
+        return AnalysisCache.shared().getRoot().resolve(AnalysisCache.hex(AnalysisCache.sha256().digest(path))
+            + EXTENSION);
+    }
+
+    /**
+     * True if the columnar copy exists and was written from the CSV file as
+     * it is now.
+     */
+    static boolean isCurrent(Path columnar, Path csv) {
+        if (!Files.isRegularFile(columnar)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(columnar, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) > 0) {
+                // keep reading
+            }
+            if (header.hasRemaining()) {
+                return false;
+            }
+            return header.getInt(4) == VERSION
+                && header.getLong(24) == Files.size(csv)
+                && header.getLong(32) == Files.getLastModifiedTime(csv).toMillis();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    static void write(ColumnarDataset data, Path target, long sourceSize, long sourceModified) throws IOException {
+        List<byte[]> names = new ArrayList<>();
+        for (String name : data.getColumnNames()) {
+            names.add(name.getBytes(StandardCharsets.UTF_8));
+        }
+        for (String name : data.getDroppedColumns()) {
+            names.add(name.getBytes(StandardCharsets.UTF_8));
+        }
+        long dataOffset = FIXED_HEADER;
+        for (byte[] name : names) {
+            dataOffset += Integer.BYTES + name.length;
+        }
+        dataOffset = (dataOffset + 7) & ~7L;
+        int columns = data.getColumnCount();
+        int rows = data.getRowCount();
+        int words = (rows + 63) >>> 6;
+        long size = dataOffset + (long) columns * rows * Double.BYTES + (long) columns * words * Long.BYTES;
+
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate((int) dataOffset).order(ByteOrder.LITTLE_ENDIAN);
+                header.put(MAGIC).putInt(VERSION).putInt(columns).putInt(data.getDroppedColumns().size())
+                    .putLong(rows).putLong(sourceSize).putLong(sourceModified);
+                for (byte[] name : names) {
+                    header.putInt(name.length).put(name);
+                }
+                header.rewind();
+                channel.write(header, 0);
+
+                long position = dataOffset;
+                for (int c = 0; c < columns; c++) {
+                    position = writeDoubles(channel, position, data.getColumn(c), rows);
+                }
+                for (int c = 0; c < columns; c++) {
+                    position = writeLongs(channel, position, data.getNullBitmap(c), words);
+                }
+                if (position != size) {
+                    throw new IOException("Columnar file size mismatch: " + position + " != " + size);
+                }
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Maps a columnar file and copies the columns into arrays of exactly
+     * the row count; the null bitmaps are read rather than recomputed. Each
+     * column is mapped on its own so files over 2 GB can be read.
+     */
+    static ColumnarDataset read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            try {
+                ByteBuffer fixed = map(channel, 0, FIXED_HEADER);
+                byte[] magic = new byte[MAGIC.length];
+                fixed.get(magic);
+                if (!Arrays.equals(magic, MAGIC)) {
+                    throw new IOException("Not a columnar dataset file: " + file);
+                }
+                int version = fixed.getInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported columnar file version " + version + " in " + file);
+                }
+                int columns = fixed.getInt();
+                int dropped = fixed.getInt();
+                long rowCount = fixed.getLong();
+                if (rowCount > Integer.MAX_VALUE / Double.BYTES) {
+                    throw new IOException("Too many rows in " + file);
+                }
+                int rows = (int) rowCount;
+
+                ByteBuffer names = map(channel, FIXED_HEADER, Math.min(channel.size(), Integer.MAX_VALUE) - FIXED_HEADER);
+                List<String> columnNames = readNames(names, columns);
+                List<String> droppedNames = readNames(names, dropped);
+                long position = (FIXED_HEADER + names.position() + 7) & ~7L;
+
+                double[][] values = new double[columns][];
+                for (int c = 0; c < columns; c++) {
+                    values[c] = new double[rows];
+                    map(channel, position, (long) rows * Double.BYTES).asDoubleBuffer().get(values[c]);
+                    position += (long) rows * Double.BYTES;
+                }
+                int words = (rows + 63) >>> 6;
+                long[][] nulls = new long[columns][];
+                for (int c = 0; c < columns; c++) {
+                    nulls[c] = new long[words];
+                    map(channel, position, (long) words * Long.BYTES).asLongBuffer().get(nulls[c]);
+                    position += (long) words * Long.BYTES;
+                }
+                return new ColumnarDataset(columnNames, droppedNames, values, nulls, rows);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Truncated columnar file: " + file, e);
+            }
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+        if (position + length > channel.size()) {
+            throw new IOException("Truncated columnar file");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static List<String> readNames(ByteBuffer buffer, int count) {
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[buffer.getInt()];
+            buffer.get(name);
+            names.add(new String(name, StandardCharsets.UTF_8));
+        }
+        return names;
+    }
+
+    private static long writeDoubles(FileChannel channel, long position, double[] values, int count)
+            throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(count * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asDoubleBuffer().put(values, 0, count);
+        return writeFully(channel, position, bytes);
+    }
+
+    private static long writeLongs(FileChannel channel, long position, long[] values, int count)
+            throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(count * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asLongBuffer().put(values, 0, count);
+        return writeFully(channel, position, bytes);
+    }
+
+    private static long writeFully(FileChannel channel, long position, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            position += channel.write(bytes, position);
+        }
+        return position;
+    }
+}
@@ -0,0 +1,166 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Pearson correlations over a {@link ColumnarDataset} with pairwise-complete
+ * handling of missing values, like pandas' DataFrame.corr().
+ *
+ * Feature selection only needs each column's correlation with the target
+ * (O(n*k)); the full matrix is computed afterwards for the selected columns
+ * only. Both passes are split over columns with fork-join.
+ */
+public final class CorrelationEngine {
+
+    private static final int COLUMNS_PER_TASK = 4;
+
+    private CorrelationEngine() {
+    }
+
+    /**
+     * Correlation of every column with the target column (NaN where fewer
+     * than two complete pairs or zero variance).
+     */
+    public static double[] targetCorrelations(ColumnarDataset dataset, int target) {
+        double[] result = new double[dataset.getColumnCount()];
+        double[] y = dataset.getColumn(target);
+        int rows = dataset.getRowCount();
+        ForkJoinPool.commonPool().invoke(new BlockTask(0, result.length, column ->
+            result[column] = pearson(dataset.getColumn(column), y, rows, null)));
+        return result;
+    }
+
+    /**
+     * Indices of the k columns most correlated (by absolute value) with the
+     * target, strongest first, excluding the target itself.
+     */
+    public static int[] topFeatures(double[] correlations, int target, int k) {
+        List<Integer> candidates = new ArrayList<>();
+        for (int c = 0; c < correlations.length; c++) {
+            if (c != target && !Double.isNaN(correlations[c])) {
+                candidates.add(c);
+            }
+        }
+        candidates.sort(Comparator.comparingDouble((Integer c) -> -Math.abs(correlations[c])));
+        int count = Math.min(k, candidates.size());
+        int[] top = new int[count];
+        for (int i = 0; i < count; i++) {
+            top[i] = candidates.get(i);
+        }
+        return top;
+    }
+
+    /**
+     * Correlation matrix of the given columns. If requiredColumn is not
+     * negative, rows where it is missing are ignored, matching the script's
+     * heatmap which is drawn from rows with a known target.
+     */
+    public static double[][] matrix(ColumnarDataset dataset, int[] columns, int requiredColumn) {
+        int k = columns.length;
+        double[][] result = new double[k][k];
+        int rows = dataset.getRowCount();
+        double[] required = requiredColumn >= 0 ? dataset.getColumn(requiredColumn) : null;
+
+        // Upper-triangle pairs, flattened so the work splits evenly
+        int pairCount = k * (k - 1) / 2;
+        int[] first = new int[pairCount];
+        int[] second = new int[pairCount];
+        int pair = 0;
+        for (int i = 0; i < k; i++) {
+            result[i][i] = 1.0;
+            for (int j = i + 1; j < k; j++) {
+                first[pair] = i;
+                second[pair] = j;
+                pair++;
+            }
+        }
+        ForkJoinPool.commonPool().invoke(new BlockTask(0, pairCount, p -> {
+            int i = first[p];
+            int j = second[p];
+            double r = pearson(dataset.getColumn(columns[i]), dataset.getColumn(columns[j]), rows, required);
+            result[i][j] = r;
+            result[j][i] = r;
+        }));
+        return result;
+    }
+
+    /**
+     * Two-pass Pearson correlation over the rows where both values (and the
+     * optional required column) are present.
+     */
+    static double pearson(double[] x, double[] y, int rows, double[] required) {
+        int n = 0;
+        double sumX = 0;
+        double sumY = 0;
+        for (int r = 0; r < rows; r++) {
+            double a = x[r];
+            double b = y[r];
+            if (Double.isNaN(a) || Double.isNaN(b) || (required != null && Double.isNaN(required[r]))) {
+                continue;
+            }
+            n++;
+            sumX += a;
+            sumY += b;
+        }
+        if (n < 2) {
+            return Double.NaN;
+        }
+        double meanX = sumX / n;
+        double meanY = sumY / n;
+        double sxx = 0;
+        double syy = 0;
+        double sxy = 0;
+        for (int r = 0; r < rows; r++) {
+            double a = x[r];
+            double b = y[r];
+            if (Double.isNaN(a) || Double.isNaN(b) || (required != null && Double.isNaN(required[r]))) {
+                continue;
+            }
+            double dx = a - meanX;
+            double dy = b - meanY;
+            sxx += dx * dx;
+            syy += dy * dy;
+            sxy += dx * dy;
+        }
+        double denominator = Math.sqrt(sxx * syy);
+        if (denominator == 0) {
+            return Double.NaN;
+        }
+        return Math.max(-1.0, Math.min(1.0, sxy / denominator));
+    }
+
+    private interface IndexAction {
+        void apply(int index);
+    }
+
+    /**
+     * Applies an action to a range of indices, splitting until blocks are small.
+     */
+    private static final class BlockTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final IndexAction action;
+
+        BlockTask(int from, int to, IndexAction action) {
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= COLUMNS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    action.apply(i);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new BlockTask(from, middle, action), new BlockTask(middle, to, action));
+        }
+    }
+}
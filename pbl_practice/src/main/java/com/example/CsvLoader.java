@@ -0,0 +1,578 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Streaming CSV reader over memory-mapped file segments.
+ *
+ * Fields are parsed straight from the mapped bytes into doubles; a column
+ * becomes non-numeric as soon as one of its non-missing values fails to
+ * parse, and the same tokens pandas treats as missing ("", "NA", "nan", ...)
+ * become NaN. Large files are split into chunks at record boundaries (found
+ * with a parallel quote-parity pass, so quoted newlines are handled) and the
+ * chunks are parsed on all cores. {@link #load(Path)} keeps the numeric, named columns the way
+ * infant_mortality_analysis.py does with select_dtypes and the 'Unnamed'
+ * filter.
+ */
+public final class CsvLoader {
+
+    /**
+     * Receives the header once and then every data row. The values array is
+     * reused between calls and holds NaN for missing or non-numeric fields.
+     */
+    interface RowHandler {
+        void header(List<String> names);
+
+        void row(double[] values);
+    }
+
+    private static final long SEGMENT_SIZE = 1L << 30;
+    private static final long CHUNK_SIZE = 32L << 20;
+    private static final long PARALLEL_THRESHOLD = 4L << 20;
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private static final Set<String> MISSING_TOKENS = new HashSet<>(Arrays.asList(
+        "", "#N/A", "#N/A N/A", "#NA", "-1.#IND", "-1.#QNAN", "-NaN", "-nan", "1.#IND", "1.#QNAN",
+        "<NA>", "N/A", "NA", "NULL", "NaN", "None", "n/a", "nan", "null"));
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final RowHandler handler;
+    private byte[] field = new byte[256];
+    private int fieldLength;
+    private boolean inQuotes;
+    private boolean quoteClosed;
+    private boolean recordStarted;
+    private int fieldIndex;
+    private List<String> header;
+    private double[] values;
+    private boolean[] numeric;
+
+    private CsvLoader(RowHandler handler, List<String> knownHeader) {
+        this.handler = handler;
+        if (knownHeader != null) {
+            header = knownHeader;
+            values = new double[header.size()];
+            numeric = new boolean[header.size()];
+            Arrays.fill(numeric, true);
+            handler.header(header);
+        }
+    }
+
+    /**
+     * Loads the numeric, named columns of a CSV file.
+     */
+    public static ColumnarDataset load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < PARALLEL_THRESHOLD) {
+                ColumnBuilder builder = new ColumnBuilder();
+                boolean[] numeric = stream(channel, builder, null);
+                return builder.build(numeric);
+            }
+            return loadParallel(channel);
+        }
+    }
+
+    /**
+     * Parses the file sequentially, passing rows to the handler, and returns
+     * which header columns turned out to be numeric.
+     */
+    static boolean[] stream(Path path, RowHandler handler) throws IOException {
+        return stream(path, handler, null);
+    }
+
+    /** As {@link #stream(Path, RowHandler)}, also feeding every byte of the file to the digest if not null. */
+    static boolean[] stream(Path path, RowHandler handler, MessageDigest digest) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return stream(channel, handler, digest);
+        }
+    }
+
+    private static boolean[] stream(FileChannel channel, RowHandler handler, MessageDigest digest)
+            throws IOException {
+        CsvLoader loader = new CsvLoader(handler, null);
+        long size = channel.size();
+        for (long position = 0; position < size; position += SEGMENT_SIZE) {
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                Math.min(SEGMENT_SIZE, size - position));
+            if (digest != null) {
+                digest.update(segment.duplicate());
+            }
+            loader.consume(segment, position == 0 ? bomLength(segment) : 0);
+        }
+        loader.finish();
+        if (loader.header == null) {
+            throw new IOException("The selected file is empty");
+        }
+        return loader.numeric;
+    }
+
+    /**
+     * Reads just the header record.
+     */
+    static List<String> header(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long dataStart = nextRecordStart(channel, 0, false);
+            MappedByteBuffer headerBytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, dataStart);
+            CsvLoader loader = new CsvLoader(new ColumnBuilder(), null);
+            loader.consume(headerBytes, bomLength(headerBytes));
+            loader.finish();
+            if (loader.header == null) {
+                throw new IOException("The selected file is empty");
+            }
+            return loader.header;
+        }
+    }
+
+    /**
+     * Parses the records from a record boundary to the end of the file,
+     * given the file's header, and returns which columns stayed numeric.
+     * Used to read only the rows appended since an earlier load.
+     */
+    static boolean[] streamFrom(Path path, long offset, List<String> header, RowHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            CsvLoader loader = new CsvLoader(handler, header);
+            long size = channel.size();
+            for (long position = offset; position < size; position += SEGMENT_SIZE) {
+                loader.consume(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(SEGMENT_SIZE, size - position)), 0);
+            }
+            loader.finish();
+            return loader.numeric;
+        }
+    }
+
+    private static ColumnarDataset loadParallel(FileChannel channel) throws IOException {
+        long size = channel.size();
+
+        // Header record
+        long dataStart = nextRecordStart(channel, 0, false);
+        MappedByteBuffer headerBytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, dataStart);
+        ColumnBuilder headerOnly = new ColumnBuilder();
+        CsvLoader headerLoader = new CsvLoader(headerOnly, null);
+        headerLoader.consume(headerBytes, bomLength(headerBytes));
+        headerLoader.finish();
+        if (headerLoader.header == null) {
+            throw new IOException("The selected file is empty");
+        }
+        List<String> header = headerLoader.header;
+
+        // Nominal chunk boundaries, then the quote parity at each boundary so
+        // every chunk can be moved to the start of the next real record
+        int chunkCount = (int) Math.max(Runtime.getRuntime().availableProcessors() * 2L,
+            (size - dataStart + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        long chunkLength = (size - dataStart + chunkCount - 1) / chunkCount;
+        long[] nominal = new long[chunkCount + 1];
+        for (int i = 0; i < chunkCount; i++) {
+            nominal[i] = Math.min(size, dataStart + i * chunkLength);
+        }
+        nominal[chunkCount] = size;
+
+        long[] quotes = new long[chunkCount];
+        parallel(chunkCount, i -> quotes[i] = countQuotes(channel, nominal[i], nominal[i + 1]));
+
+        long[] starts = new long[chunkCount + 1];
+        starts[0] = dataStart;
+        starts[chunkCount] = size;
+        long quotesBefore = 0;
+        for (int i = 1; i < chunkCount; i++) {
+            quotesBefore += quotes[i - 1];
+            starts[i] = Math.max(starts[i - 1],
+                nextRecordStart(channel, nominal[i], (quotesBefore & 1) == 1));
+        }
+
+        ColumnBuilder[] builders = new ColumnBuilder[chunkCount];
+        boolean[][] numerics = new boolean[chunkCount][];
+        parallel(chunkCount, i -> {
+            builders[i] = new ColumnBuilder();
+            CsvLoader loader = new CsvLoader(builders[i], header);
+            if (starts[i + 1] > starts[i]) {
+                loader.consume(channel.map(FileChannel.MapMode.READ_ONLY, starts[i], starts[i + 1] - starts[i]), 0);
+            }
+            loader.finish();
+            numerics[i] = loader.numeric;
+        });
+
+        boolean[] numeric = new boolean[header.size()];
+        Arrays.fill(numeric, true);
+        for (boolean[] chunkNumeric : numerics) {
+            for (int c = 0; c < numeric.length; c++) {
+                numeric[c] &= chunkNumeric[c];
+            }
+        }
+        return ColumnBuilder.merge(header, builders, numeric);
+    }
+
+    private interface ChunkTask {
+        void run(int chunk) throws IOException;
+    }
+
+    private static void parallel(int count, ChunkTask task) throws IOException {
+        try {
+            IntStream.range(0, count).parallel().forEach(i -> {
+                try {
+                    task.run(i);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static long countQuotes(FileChannel channel, long from, long to) throws IOException {
+        if (to <= from) {
+            return 0;
+        }
+        MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        byte[] block = new byte[BLOCK_SIZE];
+        long count = 0;
+        while (bytes.hasRemaining()) {
+            int length = Math.min(block.length, bytes.remaining());
+            bytes.get(block, 0, length);
+            for (int i = 0; i < length; i++) {
+                if (block[i] == '"') {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the offset just past the first newline at or after the given
+     * position that is outside a quoted field, or the file size.
+     */
+    private static long nextRecordStart(FileChannel channel, long position, boolean inQuotes) throws IOException {
+        long size = channel.size();
+        byte[] block = new byte[BLOCK_SIZE];
+        while (position < size) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                Math.min(SEGMENT_SIZE, size - position));
+            while (bytes.hasRemaining()) {
+                int length = Math.min(block.length, bytes.remaining());
+                bytes.get(block, 0, length);
+                for (int i = 0; i < length; i++) {
+                    if (block[i] == '"') {
+                        inQuotes = !inQuotes;
+                    } else if (block[i] == '\n' && !inQuotes) {
+                        return position + i + 1;
+                    }
+                }
+                position += length;
+            }
+        }
+        return size;
+    }
+
+    private static int bomLength(MappedByteBuffer segment) {
+        if (segment.limit() >= 3 && segment.get(0) == (byte) 0xEF
+                && segment.get(1) == (byte) 0xBB && segment.get(2) == (byte) 0xBF) {
+            return 3;
+        }
+        return 0;
+    }
+
+    static boolean isUnnamed(String name) {
+        return name.trim().isEmpty() || name.contains("Unnamed");
+    }
+
+    private void consume(MappedByteBuffer buffer, int start) {
+        byte[] block = new byte[BLOCK_SIZE];
+        buffer.position(start);
+        while (buffer.hasRemaining()) {
+            int length = Math.min(block.length, buffer.remaining());
+            buffer.get(block, 0, length);
+            for (int i = 0; i < length; i++) {
+                if (!inQuotes && fieldLength == 0 && !quoteClosed) {
+                    // Fast path: an unquoted field that ends inside this block is
+                    // parsed in place without copying its bytes
+                    int end = i;
+                    while (end < length && block[end] != ',' && block[end] != '\n'
+                            && block[end] != '"' && block[end] != '\r') {
+                        end++;
+                    }
+                    if (end < length && (block[end] == ',' || block[end] == '\n')) {
+                        if (end > i) {
+                            recordStarted = true;
+                        }
+                        if (block[end] == ',') {
+                            endField(block, i, end);
+                        } else {
+                            endRecord(block, i, end);
+                        }
+                        i = end;
+                        continue;
+                    }
+                }
+
+                byte b = block[i];
+                if (inQuotes) {
+                    if (b == '"') {
+                        inQuotes = false;
+                        quoteClosed = true;
+                    } else {
+                        append(b);
+                    }
+                } else if (b == ',') {
+                    endField(field, 0, fieldLength);
+                } else if (b == '\n') {
+                    endRecord(field, 0, fieldLength);
+                } else if (b == '"') {
+                    if (quoteClosed) {
+                        append(b);
+                    }
+                    inQuotes = true;
+                    quoteClosed = false;
+                    recordStarted = true;
+                } else if (b != '\r') {
+                    append(b);
+                    quoteClosed = false;
+                }
+            }
+        }
+    }
+
+    private void append(byte b) {
+        if (fieldLength == field.length) {
+            field = Arrays.copyOf(field, field.length * 2);
+        }
+        field[fieldLength++] = b;
+        recordStarted = true;
+    }
+
+    private void endField(byte[] bytes, int start, int end) {
+        if (header == null) {
+            header = new ArrayList<>();
+            header.add(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+        } else if (values == null) {
+            header.add(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+        } else if (fieldIndex < values.length) {
+            values[fieldIndex] = numeric[fieldIndex] ? parseField(fieldIndex, bytes, start, end) : Double.NaN;
+        }
+        fieldIndex++;
+        fieldLength = 0;
+        quoteClosed = false;
+        recordStarted = true;
+    }
+
+    private void endRecord(byte[] bytes, int start, int end) {
+        if (!recordStarted && fieldIndex == 0) {
+            return;  // Blank line
+        }
+        endField(bytes, start, end);
+        if (values == null) {
+            values = new double[header.size()];
+            numeric = new boolean[header.size()];
+            Arrays.fill(numeric, true);
+            handler.header(header);
+        } else {
+            for (int c = fieldIndex; c < values.length; c++) {
+                values[c] = Double.NaN;
+            }
+            handler.row(values);
+        }
+        fieldIndex = 0;
+        recordStarted = false;
+    }
+
+    private void finish() {
+        if (recordStarted || fieldIndex > 0) {
+            endRecord(field, 0, fieldLength);
+        }
+    }
+
+    /**
+     * Parses one field, returning NaN for missing values and marking the
+     * column non-numeric if the text is not a number.
+     */
+    private double parseField(int column, byte[] bytes, int start, int end) {
+        while (start < end && bytes[start] == ' ') {
+            start++;
+        }
+        while (end > start && bytes[end - 1] == ' ') {
+            end--;
+        }
+        if (start == end) {
+            return Double.NaN;
+        }
+
+        double fast = parseDecimal(bytes, start, end);
+        if (!Double.isNaN(fast)) {
+            return fast;
+        }
+
+        String text = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+        if (MISSING_TOKENS.contains(text)) {
+            return Double.NaN;
+        }
+        try {
+            char last = text.charAt(text.length() - 1);
+            if (Character.isDigit(last) || last == '.' || last == 'y') {
+                return Double.parseDouble(text);
+            }
+        } catch (NumberFormatException e) {
+            // Not a number; fall through
+        }
+        numeric[column] = false;
+        return Double.NaN;
+    }
+
+    /**
+     * Parses plain decimal numbers ("-12.5", "3e4") exactly when the digits
+     * fit in a long and the power of ten is exactly representable; returns
+     * NaN so the caller can fall back to Double.parseDouble otherwise.
+     */
+    static double parseDecimal(byte[] bytes, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (bytes[i] == '-' || bytes[i] == '+') {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean seenDot = false;
+        for (; i < end; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                if (digits >= 18) {
+                    return Double.NaN;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+                if (seenDot) {
+                    scale--;
+                }
+            } else if (b == '.' && !seenDot) {
+                seenDot = true;
+            } else {
+                break;
+            }
+        }
+        if (i == start || (i == start + 1 && (bytes[start] < '0' || bytes[start] > '9'))) {
+            return Double.NaN;
+        }
+        if (i < end) {
+            if (bytes[i] != 'e' && bytes[i] != 'E') {
+                return Double.NaN;
+            }
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+                negativeExponent = bytes[i] == '-';
+                i++;
+            }
+            if (i == end) {
+                return Double.NaN;
+            }
+            int exponent = 0;
+            for (; i < end; i++) {
+                byte b = bytes[i];
+                if (b < '0' || b > '9' || exponent > 1000) {
+                    return Double.NaN;
+                }
+                exponent = exponent * 10 + (b - '0');
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+
+        double value;
+        if (mantissa == 0) {
+            value = 0;
+        } else if (mantissa >= (1L << 53) || scale < -22 || scale > 22) {
+            return Double.NaN;
+        } else if (scale < 0) {
+            value = mantissa / POWERS_OF_TEN[-scale];
+        } else {
+            value = mantissa * POWERS_OF_TEN[scale];
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Accumulates rows into growable per-column arrays.
+     */
+    private static final class ColumnBuilder implements RowHandler {
+        private List<String> names;
+        private double[][] columns;
+        private int rowCount;
+
+        @Override
+        public void header(List<String> header) {
+            names = new ArrayList<>(header);
+            columns = new double[header.size()][1024];
+        }
+
+        @Override
+        public void row(double[] values) {
+            if (rowCount == columns[0].length) {
+                int capacity = rowCount + (rowCount >> 1);
+                for (int c = 0; c < columns.length; c++) {
+                    columns[c] = Arrays.copyOf(columns[c], capacity);
+                }
+            }
+            for (int c = 0; c < columns.length; c++) {
+                columns[c][rowCount] = values[c];
+            }
+            rowCount++;
+        }
+
+        ColumnarDataset build(boolean[] numeric) {
+            return merge(names, new ColumnBuilder[] {this}, numeric);
+        }
+
+        /**
+         * Concatenates the chunks' columns, keeping only numeric, named ones.
+         */
+        static ColumnarDataset merge(List<String> names, ColumnBuilder[] chunks, boolean[] numeric) {
+            int rowCount = 0;
+            for (ColumnBuilder chunk : chunks) {
+                rowCount += chunk.rowCount;
+            }
+            List<String> kept = new ArrayList<>();
+            List<String> dropped = new ArrayList<>();
+            List<double[]> keptColumns = new ArrayList<>();
+            for (int c = 0; c < names.size(); c++) {
+                if (!numeric[c] || isUnnamed(names.get(c))) {
+                    dropped.add(names.get(c));
+                    continue;
+                }
+                double[] column;
+                if (chunks.length == 1) {
+                    column = chunks[0].columns[c];
+                } else {
+                    column = new double[rowCount];
+                    int offset = 0;
+                    for (ColumnBuilder chunk : chunks) {
+                        System.arraycopy(chunk.columns[c], 0, column, offset, chunk.rowCount);
+                        offset += chunk.rowCount;
+                    }
+                }
+                kept.add(names.get(c));
+                keptColumns.add(column);
+            }
+            return new ColumnarDataset(kept, dropped, keptColumns.toArray(new double[0][]), rowCount);
+        }
+    }
+}
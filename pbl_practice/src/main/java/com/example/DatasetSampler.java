@@ -0,0 +1,228 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Large-dataset mode: one streaming pass over a CSV file too big to load,
+ * computing exact per-column statistics, target correlations and the
+ * file's cache digest while keeping a uniform random sample (reservoir) of the rows that have a
+ * target value. Only the sample is handed to the prepare stage, as a
+ * columnar file, so memory is bounded by the sample size and column count
+ * whatever the file size.
+ *
+ * Files of at least pbl.largeDataset.bytes (default 512 MB; 0 for every
+ * file) use this mode; pbl.sampleRows sets the sample size (default
+ * 100,000 rows).
+ */
+final class DatasetSampler implements CsvLoader.RowHandler {
+
+    static final long THRESHOLD_BYTES = Long.getLong("pbl.largeDataset.bytes", 512L << 20);
+    static final int SAMPLE_ROWS = Math.max(1, Integer.getInteger("pbl.sampleRows", 100_000));
+
+    private static final String SAMPLE_EXTENSION = ".sample" + ColumnarFile.EXTENSION;
+
+    private final String targetName;
+    private final int capacity;
+    /** Fixed seed, like random_state=42 in the script, so a file always gives the same sample. */
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    private List<String> names;
+    private int target = -1;
+    private IncrementalStats.Moments[] moments;
+    private IncrementalStats.CoMoment[] withTarget;
+    private double[][] sample;
+    private int sampled;
+    private long rows;
+    private long eligibleRows;
+
+    private DatasetSampler(String targetName, int capacity) {
+        this.targetName = targetName;
+        this.capacity = capacity;
+    }
+
+    static boolean isLarge(Path csv) throws IOException {
+        return Files.size(csv) >= THRESHOLD_BYTES;
+    }
+
+    /** Where the sample of a CSV file is kept, next to its columnar copy. */
+    static Path samplePath(Path csv) {
+        Path columnar = ColumnarFile.pathFor(csv);
+        String name = columnar.getFileName().toString();
+        return columnar.resolveSibling(name.substring(0, name.length() - ColumnarFile.EXTENSION.length())
+            + SAMPLE_EXTENSION);
+    }
+
+    /**
+     * Streams the file once and writes the sample to {@link #samplePath}.
+     * Rows without a target value are counted but never sampled, since
+     * training drops them anyway.
+     */
+    static Result sample(Path csv, String targetName, int sampleRows) throws IOException {
+        DatasetSampler sampler = new DatasetSampler(targetName, sampleRows);
+        long start = System.nanoTime();
+        MessageDigest digest = AnalysisCache.sha256();
+        boolean[] numeric = CsvLoader.stream(csv, sampler, digest);
+        Metrics.timer("dataset.sample").recordSince(start);
+        if (sampler.names == null) {
+            throw new IOException("The file is empty");
+        }
+        Result result = sampler.finish(numeric, digest);
+        Path target = samplePath(csv);
+        ColumnarFile.write(result.sample, target, Files.size(csv), Files.getLastModifiedTime(csv).toMillis());
+        AnalysisCache.shared().evict(target);
+        return result;
+    }
+
+    @Override
+    public void header(List<String> header) {
+        names = new ArrayList<>(header);
+        target = names.indexOf(targetName);
+        moments = new IncrementalStats.Moments[names.size()];
+        withTarget = new IncrementalStats.CoMoment[names.size()];
+        sample = new double[names.size()][];
+        for (int c = 0; c < names.size(); c++) {
+            moments[c] = new IncrementalStats.Moments();
+            withTarget[c] = new IncrementalStats.CoMoment();
+            sample[c] = new double[Math.min(capacity, 1024)];
+        }
+    }
+
+    @Override
+    public void row(double[] values) {
+        rows++;
+        for (int c = 0; c < values.length; c++) {
+            if (!Double.isNaN(values[c])) {
+                moments[c].add(values[c]);
+            }
+        }
+        double y = target >= 0 ? values[target] : 0;
+        if (Double.isNaN(y)) {
+            return;
+        }
+        if (target >= 0) {
+            for (int c = 0; c < values.length; c++) {
+                if (!Double.isNaN(values[c])) {
+                    withTarget[c].add(values[c], y);
+                }
+            }
+        }
+
+        // Reservoir sampling (Algorithm R): row i replaces a kept row with probability k / i
+        eligibleRows++;
+        int slot;
+        if (sampled < capacity) {
+            slot = sampled++;
+            if (slot == sample[0].length) {
+                int grown = (int) Math.min(capacity, (long) slot + (slot >> 1));
+                for (int c = 0; c < sample.length; c++) {
+                    sample[c] = Arrays.copyOf(sample[c], grown);
+                }
+            }
+        } else {
+            long pick = random.nextLong(eligibleRows);
+            if (pick >= capacity) {
+                return;
+            }
+            slot = (int) pick;
+        }
+        for (int c = 0; c < values.length; c++) {
+            sample[c][slot] = values[c];
+        }
+    }
+
+    /** Keeps the numeric, named columns, as {@link CsvLoader#load} does. */
+    private Result finish(boolean[] numeric, MessageDigest digest) {
+        List<String> kept = new ArrayList<>();
+        List<String> dropped = new ArrayList<>();
+        List<double[]> columns = new ArrayList<>();
+        List<ColumnarDataset.ColumnStats> stats = new ArrayList<>();
+        List<Double> correlations = new ArrayList<>();
+        long missing = 0;
+        for (int c = 0; c < names.size(); c++) {
+            String name = names.get(c);
+            if (!numeric[c] || CsvLoader.isUnnamed(name)) {
+                dropped.add(name);
+                continue;
+            }
+            kept.add(name);
+            columns.add(Arrays.copyOf(sample[c], sampled));
+            IncrementalStats.Moments m = moments[c];
+            stats.add(new ColumnarDataset.ColumnStats(name, (int) Math.min(m.n, Integer.MAX_VALUE),
+                (int) Math.min(rows - m.n, Integer.MAX_VALUE), m.mean, m.std(), m.min, m.max));
+            correlations.add(c == target ? 1.0 : withTarget[c].correlation());
+            missing += rows - m.n;
+        }
+        ColumnarDataset data = new ColumnarDataset(kept, dropped, columns.toArray(new double[0][]), sampled);
+        double[] exact = correlations.stream().mapToDouble(Double::doubleValue).toArray();
+        return new Result(data, stats, exact, rows, missing, digest);
+    }
+
+    /** The sample plus the statistics of the whole file. */
+    static final class Result {
+        private final ColumnarDataset sample;
+        private final List<ColumnarDataset.ColumnStats> stats;
+        private final double[] correlations;
+        private final long totalRows;
+        private final long totalMissing;
+        private final MessageDigest digest;
+
+        Result(ColumnarDataset sample, List<ColumnarDataset.ColumnStats> stats, double[] correlations,
+               long totalRows, long totalMissing, MessageDigest digest) {
+            this.sample = sample;
+            this.stats = stats;
+            this.correlations = correlations;
+            this.totalRows = totalRows;
+            this.totalMissing = totalMissing;
+            this.digest = digest;
+        }
+
+        ColumnarDataset getSample() {
+            return sample;
+        }
+
+        /** Exact statistics of a column over every row, indexed like the sample's columns. */
+        ColumnarDataset.ColumnStats getStats(int column) {
+            return stats.get(column);
+        }
+
+        /** Exact Pearson correlation of each column with the target over every row. */
+        double[] getCorrelations() {
+            return correlations;
+        }
+
+        /** SHA-256 of the file's bytes, taken during the same pass, for {@link AnalysisCache#key}. */
+        MessageDigest getDigest() {
+            return digest;
+        }
+
+        long getTotalRows() {
+            return totalRows;
+        }
+
+        String summarize(double seconds) {
+            StringBuilder summary = new StringBuilder(String.format(
+                "Large file: charts and models use a random sample of %,d of %,d rows (%.1f%%); "
+                    + "statistics and the feature ranking use every row"
+                    + "\n%,d rows, %d numeric columns (%d dropped), %,d missing values - streamed in %.2f s",
+                sample.getRowCount(), totalRows, totalRows == 0 ? 0 : 100.0 * sample.getRowCount() / totalRows,
+                totalRows, sample.getColumnCount(), sample.getDroppedColumns().size(), totalMissing, seconds));
+            int target = sample.indexOf(PrimaryController.TARGET_COLUMN);
+            if (target >= 0) {
+                ColumnarDataset.ColumnStats y = stats.get(target);
+                summary.append(String.format(
+                    "\nInfant mortality rate: mean %.2f, std %.2f, min %.2f, max %.2f (%,d missing)",
+                    y.getMean(), y.getStd(), y.getMin(), y.getMax(), y.getMissing()));
+            } else {
+                summary.append("\nWarning: no numeric \"" + PrimaryController.TARGET_COLUMN + "\" column found");
+            }
+            return summary.toString();
+        }
+    }
+}
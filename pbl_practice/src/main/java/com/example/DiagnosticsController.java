@@ -0,0 +1,95 @@
+package com.example;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.fxml.FXML;
+import javafx.scene.control.Label;
+import javafx.scene.layout.GridPane;
+import javafx.util.Duration;
+
+/**
+ * Live view of {@link Metrics}: latency percentiles for each timer and the
+ * counters, refreshed every second while the screen is shown.
+ */
+public class DiagnosticsController {
+
+    private static final String HEADER_STYLE = "-fx-font-weight: bold; -fx-text-fill: #2c3e50;";
+    private static final String CELL_STYLE = "-fx-font-family: monospace; -fx-text-fill: #2c3e50;";
+
+    @FXML
+    private Label reportingStatus;
+
+    @FXML
+    private GridPane timerGrid;
+
+    @FXML
+    private GridPane counterGrid;
+
+    private final Timeline refresh = new Timeline(new KeyFrame(Duration.seconds(1), e -> refresh()));
+
+    @FXML
+    public void initialize() {
+        String file = System.getProperty("pbl.metrics.file", "metrics.jsonl");
+        reportingStatus.setText("Also available over JMX under " + Metrics.JMX_DOMAIN
+            + (file.isEmpty() ? "" : " and appended to " + file));
+
+        refresh.setCycleCount(Animation.INDEFINITE);
+        // App keeps this screen once loaded; refresh only while it is attached to the scene
+        timerGrid.sceneProperty().addListener((obs, oldScene, scene) -> {
+            if (scene == null) {
+                refresh.stop();
+            } else {
+                refresh();
+                refresh.play();
+            }
+        });
+    }
+
+    private void refresh() {
+        timerGrid.getChildren().clear();
+        String[] headers = {"", "count", "mean", "p50", "p95", "p99", "max"};
+        for (int col = 0; col < headers.length; col++) {
+            timerGrid.add(label(headers[col], HEADER_STYLE), col, 0);
+        }
+        int row = 1;
+        for (Map.Entry<String, Metrics.Timer> entry : Metrics.timers().entrySet()) {
+            Metrics.Timer timer = entry.getValue();
+            timerGrid.add(label(entry.getKey(), HEADER_STYLE), 0, row);
+            timerGrid.add(label(Long.toString(timer.getCount()), CELL_STYLE), 1, row);
+            timerGrid.add(label(millis(timer.getMeanMillis()), CELL_STYLE), 2, row);
+            timerGrid.add(label(millis(timer.getP50Millis()), CELL_STYLE), 3, row);
+            timerGrid.add(label(millis(timer.getP95Millis()), CELL_STYLE), 4, row);
+            timerGrid.add(label(millis(timer.getP99Millis()), CELL_STYLE), 5, row);
+            timerGrid.add(label(millis(timer.getMaxMillis()), CELL_STYLE), 6, row);
+            row++;
+        }
+
+        counterGrid.getChildren().clear();
+        row = 0;
+        for (Map.Entry<String, Metrics.Counter> entry : Metrics.counters().entrySet()) {
+            counterGrid.add(label(entry.getKey(), HEADER_STYLE), 0, row);
+            counterGrid.add(label(Long.toString(entry.getValue().getCount()), CELL_STYLE), 1, row);
+            row++;
+        }
+    }
+
+    private static Label label(String text, String style) {
+        Label label = new Label(text);
+        label.setStyle(style);
+        return label;
+    }
+
+    private static String millis(double value) {
+        return value >= 100 ? String.format("%.0f", value) : String.format("%.3f", value);
+    }
+
+    @FXML
+    private void goBack() throws IOException {
+        refresh.stop();
+        App.setRoot("primary");
+    }
+}
@@ -0,0 +1,382 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * In-process evaluator for the tree ensemble exported by
+ * infant_mortality_analysis.py (forest_model.bin).
+ *
+ * All trees are stored back to back in flat primitive arrays; leaves have a
+ * negative feature index. Inputs are standardized with the exported scaler
+ * parameters and compared as float32, the same way scikit-learn does, so
+ * predictions match the Python model.
+ *
+ * Version 2 files also store each node's cover (its weighted training
+ * sample count), which {@link #explain} needs to attribute a prediction to
+ * the features with TreeSHAP.
+ */
+public final class ForestModel {
+
+    static final String FILE_NAME = "forest_model.bin";
+
+    private static final byte[] MAGIC = "PBLF".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 2;
+    /** Files without node cover still predict, but cannot be explained. */
+    private static final int VERSION_WITHOUT_COVER = 1;
+
+    /** Per explanation, which takes milliseconds; the sub-microsecond predict() is timed by its callers. */
+    private static final Metrics.Timer EXPLAIN_TIMER = Metrics.timer("predict.shap");
+
+    /** TreeSHAP path buffers, grown to the deepest forest a thread has explained. */
+    private static final ThreadLocal<Workspace> WORKSPACE = new ThreadLocal<>();
+
+    private final double[] mean;
+    private final double[] scale;
+    private final int[] roots;
+    private final int[] feature;
+    private final double[] threshold;
+    private final int[] left;
+    private final int[] right;
+    private final double[] value;
+    private final double[] cover;
+    private final int maxDepth;
+
+    private ForestModel(double[] mean, double[] scale, int[] roots, int[] feature, double[] threshold,
+                        int[] left, int[] right, double[] value, double[] cover) {
+        this.mean = mean;
+        this.scale = scale;
+        this.roots = roots;
+        this.feature = feature;
+        this.threshold = threshold;
+        this.left = left;
+        this.right = right;
+        this.value = value;
+        this.cover = cover;
+        this.maxDepth = maxDepth(roots, left, right);
+    }
+
+    public static ForestModel load(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!java.util.Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a forest model file: " + path);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION && version != VERSION_WITHOUT_COVER) {
+                throw new IOException("Unsupported forest model version " + version + " in " + path);
+            }
+
+            int featureCount = buffer.getInt();
+            double[] mean = readDoubles(buffer, featureCount);
+            double[] scale = readDoubles(buffer, featureCount);
+
+            int treeCount = buffer.getInt();
+            int[] roots = new int[treeCount];
+            int[][] features = new int[treeCount][];
+            double[][] thresholds = new double[treeCount][];
+            int[][] lefts = new int[treeCount][];
+            int[][] rights = new int[treeCount][];
+            double[][] values = new double[treeCount][];
+            double[][] covers = version == VERSION ? new double[treeCount][] : null;
+            int totalNodes = 0;
+            for (int t = 0; t < treeCount; t++) {
+                int nodeCount = buffer.getInt();
+                roots[t] = totalNodes;
+                features[t] = readInts(buffer, nodeCount);
+                thresholds[t] = readDoubles(buffer, nodeCount);
+                lefts[t] = readInts(buffer, nodeCount);
+                rights[t] = readInts(buffer, nodeCount);
+                values[t] = readDoubles(buffer, nodeCount);
+                if (covers != null) {
+                    covers[t] = readDoubles(buffer, nodeCount);
+                }
+                totalNodes += nodeCount;
+            }
+
+            // Concatenate the trees, shifting child indices to global node offsets
+            int[] feature = new int[totalNodes];
+            double[] threshold = new double[totalNodes];
+            int[] left = new int[totalNodes];
+            int[] right = new int[totalNodes];
+            double[] value = new double[totalNodes];
+            double[] cover = covers != null ? new double[totalNodes] : null;
+            for (int t = 0; t < treeCount; t++) {
+                int offset = roots[t];
+                int nodeCount = features[t].length;
+                System.arraycopy(features[t], 0, feature, offset, nodeCount);
+                System.arraycopy(thresholds[t], 0, threshold, offset, nodeCount);
+                System.arraycopy(values[t], 0, value, offset, nodeCount);
+                if (cover != null) {
+                    System.arraycopy(covers[t], 0, cover, offset, nodeCount);
+                }
+                for (int i = 0; i < nodeCount; i++) {
+                    if (feature[offset + i] >= featureCount) {
+                        throw new IOException("Feature index out of range in " + path);
+                    }
+                    left[offset + i] = lefts[t][i] < 0 ? -1 : lefts[t][i] + offset;
+                    right[offset + i] = rights[t][i] < 0 ? -1 : rights[t][i] + offset;
+                }
+            }
+            return new ForestModel(mean, scale, roots, feature, threshold, left, right, value, cover);
+        } catch (java.nio.BufferUnderflowException e) {
+            throw new IOException("Truncated forest model file: " + path, e);
+        }
+    }
+
+    public int getFeatureCount() {
+        return mean.length;
+    }
+
+    public int getTreeCount() {
+        return roots.length;
+    }
+
+    /**
+     * Predicts from raw (unscaled) feature values ordered as in feature_names.json.
+     */
+    public double predict(double[] features) {
+        double sum = 0;
+        for (int root : roots) {
+            sum += value[leafFor(root, features)];
+        }
+        return sum / roots.length;
+    }
+
+    /** Whether the file stored node cover, which {@link #explain} needs. */
+    public boolean canExplain() {
+        return cover != null;
+    }
+
+    /**
+     * The average prediction over the training data (each root's value),
+     * which the contributions from {@link #explain} are relative to.
+     */
+    public double getExpectedValue() {
+        double sum = 0;
+        for (int root : roots) {
+            sum += value[root];
+        }
+        return sum / roots.length;
+    }
+
+    /**
+     * SHAP values of one prediction, computed exactly with TreeSHAP
+     * (Lundberg et al., Algorithm 2) in O(leaves x depth^2) per tree rather
+     * than by enumerating feature subsets. Takes raw feature values ordered
+     * as in feature_names.json and returns one contribution per feature;
+     * they add up to {@link #predict} minus {@link #getExpectedValue}.
+     */
+    public double[] explain(double[] features) {
+        if (cover == null) {
+            throw new IllegalStateException(FILE_NAME + " was exported without node cover; rerun the analysis");
+        }
+        long start = System.nanoTime();
+        float[] x = new float[mean.length];
+        for (int f = 0; f < x.length; f++) {
+            x[f] = (float) ((features[f] - mean[f]) / scale[f]);
+        }
+        // Each recursion level takes a segment one longer than its parent's
+        int size = (maxDepth + 2) * (maxDepth + 3) / 2;
+        Workspace workspace = WORKSPACE.get();
+        if (workspace == null || workspace.feature.length < size) {
+            workspace = new Workspace(size, maxDepth);
+            WORKSPACE.set(workspace);
+        }
+        double[] phi = new double[mean.length];
+        for (int root : roots) {
+            treeShap(root, x, phi, workspace, 0, 0, 1, 1, -1);
+        }
+        for (int f = 0; f < phi.length; f++) {
+            phi[f] /= roots.length;
+        }
+        EXPLAIN_TIMER.recordSince(start);
+        return phi;
+    }
+
+    /**
+     * Walks one tree, carrying the path of distinct features split on so
+     * far, with for each the fraction of zero (feature unknown) and one
+     * (feature known) paths flowing through, and the permutation weights.
+     * At a leaf, each path feature's weight times its known-minus-unknown
+     * fraction is its share of the leaf value.
+     */
+    private void treeShap(int node, float[] x, double[] phi, Workspace w, int parentOffset, int depth,
+                          double parentZero, double parentOne, int parentFeature) {
+        int offset = parentOffset + depth + 1;
+        System.arraycopy(w.feature, parentOffset, w.feature, offset, depth);
+        System.arraycopy(w.zero, parentOffset, w.zero, offset, depth);
+        System.arraycopy(w.one, parentOffset, w.one, offset, depth);
+        System.arraycopy(w.weight, parentOffset, w.weight, offset, depth);
+        extendPath(w, offset, depth, parentZero, parentOne, parentFeature);
+
+        int split = feature[node];
+        if (split < 0) {
+            for (int i = 1; i <= depth; i++) {
+                double weight = unwoundPathSum(w, offset, depth, i);
+                phi[w.feature[offset + i]] += weight * (w.one[offset + i] - w.zero[offset + i]) * value[node];
+            }
+            return;
+        }
+
+        int hot = x[split] <= threshold[node] ? left[node] : right[node];
+        int cold = hot == left[node] ? right[node] : left[node];
+        double incomingZero = 1;
+        double incomingOne = 1;
+        // A feature split on again is taken off the path and re-added below with its fractions combined
+        int pathIndex = 0;
+        while (pathIndex <= depth && w.feature[offset + pathIndex] != split) {
+            pathIndex++;
+        }
+        if (pathIndex <= depth) {
+            incomingZero = w.zero[offset + pathIndex];
+            incomingOne = w.one[offset + pathIndex];
+            unwindPath(w, offset, depth, pathIndex);
+            depth--;
+        }
+        treeShap(hot, x, phi, w, offset, depth + 1, cover[hot] / cover[node] * incomingZero, incomingOne, split);
+        treeShap(cold, x, phi, w, offset, depth + 1, cover[cold] / cover[node] * incomingZero, 0, split);
+    }
+
+    // The path arithmetic multiplies by w.reciprocal[k] = 1 / k instead of dividing, which is most of its cost
+
+    private static void extendPath(Workspace w, int offset, int depth, double zero, double one, int feature) {
+        w.feature[offset + depth] = feature;
+        w.zero[offset + depth] = zero;
+        w.one[offset + depth] = one;
+        w.weight[offset + depth] = depth == 0 ? 1 : 0;
+        double zeroScale = zero * w.reciprocal[depth + 1];
+        double oneScale = one * w.reciprocal[depth + 1];
+        for (int i = depth - 1; i >= 0; i--) {
+            w.weight[offset + i + 1] += oneScale * w.weight[offset + i] * (i + 1);
+            w.weight[offset + i] = zeroScale * w.weight[offset + i] * (depth - i);
+        }
+    }
+
+    private static void unwindPath(Workspace w, int offset, int depth, int pathIndex) {
+        double one = w.one[offset + pathIndex];
+        double zero = w.zero[offset + pathIndex];
+        double next = w.weight[offset + depth];
+        double[] reciprocal = w.reciprocal;
+        if (one != 0) {
+            double oneScale = (depth + 1) / one;
+            double zeroScale = zero * reciprocal[depth + 1];
+            for (int i = depth - 1; i >= 0; i--) {
+                double previous = w.weight[offset + i];
+                w.weight[offset + i] = next * oneScale * reciprocal[i + 1];
+                next = previous - w.weight[offset + i] * zeroScale * (depth - i);
+            }
+        } else {
+            double zeroScale = (depth + 1) / zero;
+            for (int i = depth - 1; i >= 0; i--) {
+                w.weight[offset + i] = w.weight[offset + i] * zeroScale * reciprocal[depth - i];
+            }
+        }
+        for (int i = pathIndex; i < depth; i++) {
+            w.feature[offset + i] = w.feature[offset + i + 1];
+            w.zero[offset + i] = w.zero[offset + i + 1];
+            w.one[offset + i] = w.one[offset + i + 1];
+        }
+    }
+
+    /** The total weight the path would have with the element at pathIndex unwound, without unwinding it. */
+    private static double unwoundPathSum(Workspace w, int offset, int depth, int pathIndex) {
+        double one = w.one[offset + pathIndex];
+        double zero = w.zero[offset + pathIndex];
+        double next = w.weight[offset + depth];
+        double[] reciprocal = w.reciprocal;
+        double total = 0;
+        if (one != 0) {
+            double oneScale = (depth + 1) / one;
+            double zeroScale = zero * reciprocal[depth + 1];
+            for (int i = depth - 1; i >= 0; i--) {
+                double weight = next * oneScale * reciprocal[i + 1];
+                total += weight;
+                next = w.weight[offset + i] - weight * zeroScale * (depth - i);
+            }
+        } else {
+            double zeroScale = (depth + 1) / zero;
+            for (int i = depth - 1; i >= 0; i--) {
+                total += w.weight[offset + i] * zeroScale * reciprocal[depth - i];
+            }
+        }
+        return total;
+    }
+
+    /** Number of splits on the longest root-to-leaf path in any tree. */
+    private static int maxDepth(int[] roots, int[] left, int[] right) {
+        int deepest = 0;
+        int[] nodes = new int[64];
+        int[] depths = new int[64];
+        for (int root : roots) {
+            int top = 0;
+            nodes[0] = root;
+            depths[0] = 0;
+            while (top >= 0) {
+                int node = nodes[top];
+                int depth = depths[top--];
+                deepest = Math.max(deepest, depth);
+                if (left[node] >= 0) {
+                    if (top + 2 >= nodes.length) {
+                        nodes = java.util.Arrays.copyOf(nodes, nodes.length * 2);
+                        depths = java.util.Arrays.copyOf(depths, depths.length * 2);
+                    }
+                    nodes[++top] = left[node];
+                    depths[top] = depth + 1;
+                    nodes[++top] = right[node];
+                    depths[top] = depth + 1;
+                }
+            }
+        }
+        return deepest;
+    }
+
+    private int leafFor(int node, double[] features) {
+        while (feature[node] >= 0) {
+            int f = feature[node];
+            float x = (float) ((features[f] - mean[f]) / scale[f]);
+            node = x <= threshold[node] ? left[node] : right[node];
+        }
+        return node;
+    }
+
+    /** Path elements of the TreeSHAP recursion, in parallel arrays. */
+    private static final class Workspace {
+        final int[] feature;
+        final double[] zero;
+        final double[] one;
+        final double[] weight;
+        final double[] reciprocal;
+
+        Workspace(int size, int maxDepth) {
+            feature = new int[size];
+            zero = new double[size];
+            one = new double[size];
+            weight = new double[size];
+            reciprocal = new double[maxDepth + 3];
+            for (int k = 1; k < reciprocal.length; k++) {
+                reciprocal[k] = 1.0 / k;
+            }
+        }
+    }
+
+    private static double[] readDoubles(ByteBuffer buffer, int count) {
+        double[] result = new double[count];
+        buffer.asDoubleBuffer().get(result);
+        buffer.position(buffer.position() + count * Double.BYTES);
+        return result;
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int count) {
+        int[] result = new int[count];
+        buffer.asIntBuffer().get(result);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        return result;
+    }
+}
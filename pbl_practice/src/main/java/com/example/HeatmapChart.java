@@ -0,0 +1,96 @@
+package com.example;
+
+import java.util.List;
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * Correlation matrix drawn as coloured cells, annotated with the values
+ * while the cells are large enough to hold them.
+ */
+class HeatmapChart extends ChartCanvas {
+
+    private static final double LABEL_WIDTH = 180;
+    private static final double LEGEND_WIDTH = 50;
+    private static final double MAX_CELL = 60;
+    private static final double MIN_ANNOTATED_CELL = 30;
+
+    private final List<String> labels;
+    private final double[][] matrix;
+
+    HeatmapChart(List<String> labels, double[][] matrix) {
+        this.labels = labels;
+        this.matrix = matrix;
+    }
+
+    private double cellSize(double width) {
+        return Math.max(2, Math.min(MAX_CELL, (width - LABEL_WIDTH - LEGEND_WIDTH) / Math.max(1, labels.size())));
+    }
+
+    @Override
+    double heightFor(double width) {
+        // Column labels are numbered along the top and matched to the row labels
+        return 20 + cellSize(width) * labels.size() + 10;
+    }
+
+    @Override
+    void paint(GraphicsContext g, double width, double height) {
+        int n = labels.size();
+        double cell = cellSize(width);
+        double left = LABEL_WIDTH;
+        double top = 20;
+        boolean annotate = cell >= MIN_ANNOTATED_CELL;
+
+        g.setFont(LABEL_FONT);
+        for (int row = 0; row < n; row++) {
+            for (int col = 0; col < n; col++) {
+                double value = matrix[row][col];
+                g.setFill(coolwarm(value));
+                g.fillRect(left + col * cell, top + row * cell, cell, cell);
+                if (annotate && !Double.isNaN(value)) {
+                    g.setFill(Math.abs(value) > 0.6 ? Color.WHITE : Color.BLACK);
+                    g.setTextAlign(TextAlignment.CENTER);
+                    g.setTextBaseline(VPos.CENTER);
+                    g.fillText(String.format("%.2f", value), left + (col + 0.5) * cell, top + (row + 0.5) * cell);
+                }
+            }
+        }
+        if (cell >= 6) {
+            g.setStroke(Color.WHITE);
+            g.setLineWidth(0.5);
+            for (int i = 0; i <= n; i++) {
+                g.strokeLine(left, top + i * cell, left + n * cell, top + i * cell);
+                g.strokeLine(left + i * cell, top, left + i * cell, top + n * cell);
+            }
+        }
+
+        // Row labels (numbered) and column numbers
+        boolean labelRows = cell >= 10;
+        g.setFill(TEXT_COLOR);
+        for (int i = 0; i < n && labelRows; i++) {
+            g.setTextAlign(TextAlignment.RIGHT);
+            g.setTextBaseline(VPos.CENTER);
+            g.fillText(fit((i + 1) + ". " + labels.get(i), LABEL_WIDTH - 8), left - 6, top + (i + 0.5) * cell);
+            g.setTextAlign(TextAlignment.CENTER);
+            g.setTextBaseline(VPos.BOTTOM);
+            g.fillText(Integer.toString(i + 1), left + (i + 0.5) * cell, top - 2);
+        }
+
+        // Colour scale from -1 to 1
+        double legendX = left + n * cell + 15;
+        double legendHeight = n * cell;
+        for (int y = 0; y < legendHeight; y++) {
+            g.setFill(coolwarm(1 - 2 * y / legendHeight));
+            g.fillRect(legendX, top + y, 12, 1);
+        }
+        g.setFill(TEXT_COLOR);
+        g.setTextAlign(TextAlignment.LEFT);
+        g.setTextBaseline(VPos.TOP);
+        g.fillText("1", legendX + 16, top);
+        g.setTextBaseline(VPos.BOTTOM);
+        g.fillText("-1", legendX + 16, top + legendHeight);
+    }
+}
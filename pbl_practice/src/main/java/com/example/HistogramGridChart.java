@@ -0,0 +1,100 @@
+package com.example;
+
+import java.util.List;
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * One histogram per feature, laid out in as many columns as fit the width.
+ */
+class HistogramGridChart extends ChartCanvas {
+
+    private static final double MIN_CELL_WIDTH = 300;
+    private static final double CELL_HEIGHT = 190;
+    private static final double PADDING = 12;
+    private static final Color BAR_COLOR = Color.SKYBLUE;
+
+    private final List<ChartData.Distribution> distributions;
+
+    HistogramGridChart(List<ChartData.Distribution> distributions) {
+        this.distributions = distributions;
+    }
+
+    private int columns(double width) {
+        return (int) Math.max(1, Math.floor(width / MIN_CELL_WIDTH));
+    }
+
+    @Override
+    double heightFor(double width) {
+        int rows = (distributions.size() + columns(width) - 1) / columns(width);
+        return Math.max(1, rows) * CELL_HEIGHT;
+    }
+
+    @Override
+    void paint(GraphicsContext g, double width, double height) {
+        int columns = columns(width);
+        double cellWidth = width / columns;
+        for (int i = 0; i < distributions.size(); i++) {
+            double x = (i % columns) * cellWidth;
+            double y = (i / columns) * CELL_HEIGHT;
+            paintHistogram(g, distributions.get(i), x + PADDING, y + PADDING,
+                cellWidth - 2 * PADDING, CELL_HEIGHT - 2 * PADDING);
+        }
+    }
+
+    private void paintHistogram(GraphicsContext g, ChartData.Distribution distribution,
+                                double x, double y, double width, double height) {
+        g.setFill(TEXT_COLOR);
+        g.setFont(TITLE_FONT);
+        g.setTextAlign(TextAlignment.CENTER);
+        g.setTextBaseline(VPos.TOP);
+        g.fillText(fit(distribution.getFeature(), width), x + width / 2, y);
+
+        long[] counts = distribution.getCounts();
+        double[] edges = distribution.getEdges();
+        if (counts == null || counts.length == 0) {
+            return;
+        }
+        long maxCount = 1;
+        for (long count : counts) {
+            maxCount = Math.max(maxCount, count);
+        }
+
+        double axisLeft = x + 36;
+        double plotTop = y + 20;
+        double plotBottom = y + height - 16;
+        double plotWidth = x + width - axisLeft;
+        double plotHeight = plotBottom - plotTop;
+        double barWidth = plotWidth / counts.length;
+
+        for (int b = 0; b < counts.length; b++) {
+            double barHeight = plotHeight * counts[b] / maxCount;
+            double barX = axisLeft + b * barWidth;
+            g.setFill(BAR_COLOR);
+            g.fillRect(barX, plotBottom - barHeight, barWidth, barHeight);
+            g.setStroke(Color.BLACK);
+            g.setLineWidth(0.5);
+            g.strokeRect(barX, plotBottom - barHeight, barWidth, barHeight);
+        }
+
+        g.setStroke(TEXT_COLOR);
+        g.strokeLine(axisLeft, plotBottom, axisLeft + plotWidth, plotBottom);
+        g.strokeLine(axisLeft, plotTop, axisLeft, plotBottom);
+
+        g.setFont(LABEL_FONT);
+        g.setFill(TEXT_COLOR);
+        g.setTextAlign(TextAlignment.RIGHT);
+        g.setTextBaseline(VPos.CENTER);
+        g.fillText(Long.toString(maxCount), axisLeft - 4, plotTop);
+        g.fillText("0", axisLeft - 4, plotBottom);
+
+        g.setTextBaseline(VPos.TOP);
+        g.setTextAlign(TextAlignment.LEFT);
+        g.fillText(formatNumber(edges[0]), axisLeft, plotBottom + 2);
+        g.setTextAlign(TextAlignment.RIGHT);
+        g.fillText(formatNumber(edges[edges.length - 1]), axisLeft + plotWidth, plotBottom + 2);
+    }
+}
@@ -0,0 +1,85 @@
+package com.example;
+
+import java.util.List;
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * One labelled bar per item, growing from zero so negative values (such as
+ * an R² below zero) extend to the left.
+ */
+class HorizontalBarChart extends ChartCanvas {
+
+    private static final double LABEL_WIDTH = 220;
+    private static final double ROW_HEIGHT = 24;
+    private static final double AXIS_HEIGHT = 24;
+    private static final double VALUE_WIDTH = 50;
+
+    private final List<String> labels;
+    private final double[] values;
+    private final String axisLabel;
+
+    HorizontalBarChart(List<String> labels, double[] values, String axisLabel) {
+        this.labels = labels;
+        this.values = values;
+        this.axisLabel = axisLabel;
+    }
+
+    @Override
+    double heightFor(double width) {
+        return labels.size() * ROW_HEIGHT + AXIS_HEIGHT;
+    }
+
+    @Override
+    void paint(GraphicsContext g, double width, double height) {
+        double min = 0;
+        double max = 0;
+        for (double value : values) {
+            if (!Double.isNaN(value)) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+        if (max == min) {
+            max = min + 1;
+        }
+        double left = LABEL_WIDTH;
+        double plotWidth = Math.max(1, width - LABEL_WIDTH - VALUE_WIDTH);
+        double scale = plotWidth / (max - min);
+        double zeroX = left + (0 - min) * scale;
+
+        g.setFont(LABEL_FONT);
+        for (int i = 0; i < labels.size(); i++) {
+            double y = i * ROW_HEIGHT;
+            double value = values[i];
+            g.setFill(TEXT_COLOR);
+            g.setTextAlign(TextAlignment.RIGHT);
+            g.setTextBaseline(VPos.CENTER);
+            g.fillText(fit(labels.get(i), LABEL_WIDTH - 10), left - 8, y + ROW_HEIGHT / 2);
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            double barX = Math.min(zeroX, zeroX + value * scale);
+            double barWidth = Math.abs(value * scale);
+            g.setFill(coolwarm(labels.size() == 1 ? 0 : 1 - 2.0 * i / (labels.size() - 1)));
+            g.fillRect(barX, y + 4, barWidth, ROW_HEIGHT - 8);
+            g.setFill(TEXT_COLOR);
+            g.setTextAlign(value < 0 ? TextAlignment.RIGHT : TextAlignment.LEFT);
+            g.fillText(String.format("%.3f", value), value < 0 ? barX - 4 : barX + barWidth + 4, y + ROW_HEIGHT / 2);
+        }
+
+        double axisY = labels.size() * ROW_HEIGHT;
+        g.setStroke(TEXT_COLOR);
+        g.setLineWidth(1);
+        g.strokeLine(zeroX, 0, zeroX, axisY);
+        g.setStroke(GRID_COLOR);
+        g.strokeLine(left, axisY, left + plotWidth, axisY);
+        g.setFill(Color.GRAY);
+        g.setTextAlign(TextAlignment.CENTER);
+        g.setTextBaseline(VPos.TOP);
+        g.fillText(axisLabel, left + plotWidth / 2, axisY + 4);
+    }
+}
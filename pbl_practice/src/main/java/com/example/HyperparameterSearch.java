@@ -0,0 +1,202 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Successive-halving search over every model's hyperparameter candidates,
+ * which the prepare stage lists. Each round fits the surviving candidates
+ * on a larger share of the training rows, one evaluate process per model
+ * on the {@link TrainingScheduler} pool, and keeps the best third across
+ * all models; the last round uses all the rows. Each model is then trained
+ * with its best candidate, and the overall winner is saved for prediction.
+ * The outcome is kept with the results as search_summary.json.
+ */
+public final class HyperparameterSearch {
+
+    static final String FILE_NAME = "search_summary.json";
+
+    /** Each round keeps the best 1/ETA of its candidates. */
+    private static final int ETA = 3;
+
+    private String bestModel;
+    /** Validation R² of the winner in the last round; null if nothing was compared. */
+    private Double bestScore;
+    private int candidates;
+    private int evaluations;
+    private int rounds;
+    private double seconds;
+    /** Candidate index each model is trained with. */
+    private Map<String, Integer> chosen = new LinkedHashMap<>();
+    private Map<String, JsonObject> params = new LinkedHashMap<>();
+
+    private HyperparameterSearch() {
+    }
+
+    /**
+     * Runs the search. The space maps each model to its candidates' parameters,
+     * in the order the script numbers them; a model with none listed has just
+     * its default parameters.
+     */
+    static HyperparameterSearch run(String scriptPath, Path outputDir, Map<String, JsonArray> space,
+                                    Consumer<String> output, ProcessGroup group)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HyperparameterSearch search = new HyperparameterSearch();
+        List<Candidate> survivors = new ArrayList<>();
+        for (Map.Entry<String, JsonArray> entry : space.entrySet()) {
+            for (int i = 0; i < Math.max(1, entry.getValue().size()); i++) {
+                survivors.add(new Candidate(entry.getKey(), i));
+            }
+        }
+        if (survivors.isEmpty()) {
+            throw new IOException("No models to search");
+        }
+        search.candidates = survivors.size();
+        for (int n = survivors.size(); n > 1; n = ceilDiv(n, ETA)) {
+            search.rounds++;
+        }
+
+        for (int round = 0; round < search.rounds; round++) {
+            String budget = String.valueOf(Math.pow(ETA, round - search.rounds + 1));
+            Map<String, List<Candidate>> byModel = survivors.stream().collect(
+                Collectors.groupingBy(candidate -> candidate.model, LinkedHashMap::new, Collectors.toList()));
+            ProcessGroup stage = group.child();
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (Map.Entry<String, List<Candidate>> entry : byModel.entrySet()) {
+                tasks.add(() -> evaluate(scriptPath, outputDir, entry.getKey(), entry.getValue(), budget, output,
+                    stage));
+            }
+            TrainingScheduler.runAll(tasks, "Hyperparameter search", stage);
+            search.evaluations += survivors.size();
+
+            Comparator<Candidate> byScore = Comparator.comparingDouble((Candidate candidate) -> candidate.score)
+                .reversed();
+            for (Map.Entry<String, List<Candidate>> entry : byModel.entrySet()) {
+                search.chosen.put(entry.getKey(), Collections.min(entry.getValue(), byScore).index);
+            }
+            survivors.sort(byScore);
+            survivors = new ArrayList<>(survivors.subList(0, ceilDiv(survivors.size(), ETA)));
+        }
+
+        Candidate winner = survivors.get(0);
+        search.bestModel = winner.model;
+        search.bestScore = search.rounds > 0 && Double.isFinite(winner.score) ? winner.score : null;
+        for (Map.Entry<String, JsonArray> entry : space.entrySet()) {
+            int index = search.chosen.computeIfAbsent(entry.getKey(), model -> 0);
+            JsonArray candidates = entry.getValue();
+            search.params.put(entry.getKey(),
+                index < candidates.size() ? candidates.get(index).getAsJsonObject() : new JsonObject());
+        }
+        search.seconds = (System.nanoTime() - start) / 1e9;
+        Metrics.timer("search.total").recordSince(start);
+        Metrics.counter("search.evaluations").add(search.evaluations);
+        return search;
+    }
+
+    private static Void evaluate(String scriptPath, Path outputDir, String model, List<Candidate> candidates,
+                                 String budget, Consumer<String> output, ProcessGroup group)
+            throws IOException, InterruptedException {
+        String indices = candidates.stream().map(candidate -> String.valueOf(candidate.index))
+            .collect(Collectors.joining(","));
+        String result = ScriptRunner.run(scriptPath, Arrays.asList("--stage", "evaluate", "--model", model,
+            "--candidates", indices, "--budget", budget, "--output-dir", outputDir.toString()), output, group);
+        AnalysisEvent event = AnalysisEvent.find(result, AnalysisEvent.CANDIDATE_SCORES);
+        if (event == null) {
+            throw new IOException("No scores reported for " + model + ":\n" + result);
+        }
+        JsonObject scores = event.get("scores").getAsJsonObject();
+        for (Candidate candidate : candidates) {
+            JsonElement score = scores.get(String.valueOf(candidate.index));
+            // Failed fits score null and are dropped first
+            candidate.score = score == null || score.isJsonNull() ? Double.NEGATIVE_INFINITY : score.getAsDouble();
+        }
+        return null;
+    }
+
+    private static int ceilDiv(int n, int d) {
+        return (n + d - 1) / d;
+    }
+
+    /** Reads the summary saved with a job's results, or null if there is none. */
+    static HyperparameterSearch load(Path outputDir) throws IOException {
+        Path file = outputDir.resolve(FILE_NAME);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        String json = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        return new Gson().fromJson(json, HyperparameterSearch.class);
+    }
+
+    void save(Path outputDir) throws IOException {
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        Files.write(outputDir.resolve(FILE_NAME), gson.toJson(this).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String getBestModel() {
+        return bestModel;
+    }
+
+    public Double getBestScore() {
+        return bestScore;
+    }
+
+    public int getCandidateCount() {
+        return candidates;
+    }
+
+    public int getEvaluationCount() {
+        return evaluations;
+    }
+
+    public int getRoundCount() {
+        return rounds;
+    }
+
+    public double getSeconds() {
+        return seconds;
+    }
+
+    Map<String, Integer> getChosen() {
+        return Collections.unmodifiableMap(chosen);
+    }
+
+    /** The parameters a model was trained with, as name=value pairs. */
+    public String describeParams(String model) {
+        JsonObject values = params.get(model);
+        if (values == null || values.size() == 0) {
+            return "default parameters";
+        }
+        return values.entrySet().stream().map(entry -> entry.getKey() + "=" + entry.getValue())
+            .collect(Collectors.joining(", "));
+    }
+
+    private static final class Candidate {
+        final String model;
+        final int index;
+        double score = Double.NEGATIVE_INFINITY;
+
+        Candidate(String model, int index) {
+            this.model = model;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+/**
+ * Running statistics of one dataset file, saved after each analysis so that
+ * rows appended to the file later can be folded in without reparsing it.
+ * A file counts as appended to when it is longer than before and the old
+ * length still ends a record and hashes the same. The whole file is hashed
+ * in one sequential read, still far cheaper than parsing it again, which
+ * also yields the digest for the analysis cache key.
+ *
+ * Kept with Welford-style streaming updates: the mean and variance of every
+ * column, each column's co-moments with the target (for the ranking), the
+ * pairwise co-moments of the selected features and the target (for the
+ * heatmap), and the histograms of the selected features. Pairs only count
+ * rows where the target is known, as in the script.
+ *
+ * The state lives next to the cache entries it refers to, as a file rather
+ * than a directory so that cache eviction leaves it alone. Disabled with
+ * -Dpbl.incremental=false.
+ */
+final class IncrementalStats {
+
+    static final boolean ENABLED = !"false".equals(System.getProperty("pbl.incremental"));
+
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private static final Gson GSON = new GsonBuilder().serializeSpecialFloatingPointValues().create();
+
+    /** Mean and variance of one column (Welford). */
+    static final class Moments {
+        long n;
+        double mean;
+        double m2;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        void add(double x) {
+            n++;
+            double delta = x - mean;
+            mean += delta / n;
+            m2 += delta * (x - mean);
+            min = Math.min(min, x);
+            max = Math.max(max, x);
+        }
+
+        /** Sample standard deviation, as pandas reports it. */
+        double std() {
+            return n < 2 ? Double.NaN : Math.sqrt(m2 / (n - 1));
+        }
+    }
+
+    /** Means, variances and covariance of a pair of columns (bivariate Welford). */
+    static final class CoMoment {
+        long n;
+        double meanX;
+        double meanY;
+        double m2X;
+        double m2Y;
+        double cXY;
+
+        void add(double x, double y) {
+            n++;
+            double dx = x - meanX;
+            meanX += dx / n;
+            double dy = y - meanY;
+            meanY += dy / n;
+            m2X += dx * (x - meanX);
+            m2Y += dy * (y - meanY);
+            cXY += dx * (y - meanY);
+        }
+
+        /** Pearson correlation, NaN like {@link CorrelationEngine#pearson} when undefined. */
+        double correlation() {
+            if (n < 2) {
+                return Double.NaN;
+            }
+            double denominator = Math.sqrt(m2X * m2Y);
+            if (denominator == 0) {
+                return Double.NaN;
+            }
+            return Math.max(-1.0, Math.min(1.0, cXY / denominator));
+        }
+    }
+
+    // Saved state
+    private String scriptDigest;
+    private String cacheKey;
+    private long size;
+    private String prefixDigest;
+    private List<String> header;
+    private List<String> columns;
+    /** Header index of each column. */
+    private int[] headerIndex;
+    private int target;
+    private long rows;
+    private Moments[] moments;
+    private CoMoment[] targetPairs;
+    private List<String> topFeatures;
+    /** Upper triangle, row by row, of the pairs among topFeatures plus the target. */
+    private CoMoment[] topPairs;
+    private List<ChartData.Distribution> histograms;
+
+    // Set by appendFrom
+    private transient long appendedRows;
+    private transient boolean histogramsInRange;
+    // Set by build and appendFrom
+    private transient MessageDigest contentDigest;
+
+    private IncrementalStats() {
+    }
+
+    /**
+     * Statistics of a freshly loaded dataset; topFeatures are the features
+     * the analysis is about to use.
+     */
+    static IncrementalStats build(Path file, ColumnarDataset data, int target, List<String> topFeatures)
+            throws IOException {
+        IncrementalStats stats = new IncrementalStats();
+        stats.header = CsvLoader.header(file);
+        stats.columns = new ArrayList<>(data.getColumnNames());
+        stats.headerIndex = new int[stats.columns.size()];
+        for (int c = 0; c < stats.headerIndex.length; c++) {
+            stats.headerIndex[c] = stats.header.indexOf(stats.columns.get(c));
+        }
+        stats.target = target;
+        stats.rows = data.getRowCount();
+        stats.topFeatures = new ArrayList<>(topFeatures);
+        stats.initAccumulators();
+
+        int[] top = stats.topColumns();
+        double[] y = data.getColumn(target);
+        double[] values = new double[stats.columns.size()];
+        for (int r = 0; r < data.getRowCount(); r++) {
+            for (int c = 0; c < values.length; c++) {
+                values[c] = data.getColumn(c)[r];
+            }
+            stats.addRow(values, y[r], top);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            stats.size = channel.size();
+            stats.hash(channel, -1, null);
+        }
+        return stats;
+    }
+
+    /**
+     * Loads the saved state for a dataset file, or returns null if there is
+     * none or it was written by a different version of the script.
+     */
+    static IncrementalStats load(Path file, String scriptDigest) {
+        Path stateFile = stateFile(file);
+        if (!Files.isRegularFile(stateFile)) {
+            return null;
+        }
+        try {
+            IncrementalStats stats = GSON.fromJson(
+                new String(Files.readAllBytes(stateFile), StandardCharsets.UTF_8), IncrementalStats.class);
+            return stats != null && scriptDigest.equals(stats.scriptDigest) ? stats : null;
+        } catch (IOException | JsonParseException e) {
+            System.err.println("Ignoring incremental state for " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Folds in the rows appended to the file since this state was saved.
+     * Returns false, leaving this object unusable, if the file was changed
+     * other than by appending rows, has no new rows, or a column stopped
+     * being numeric.
+     */
+    boolean appendFrom(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long newSize = channel.size();
+            if (newSize <= size || !endsRecord(channel, size)) {
+                return false;
+            }
+            long oldSize = size;
+            size = newSize;
+            if (!hash(channel, oldSize, prefixDigest)) {
+                return false;
+            }
+            int[] top = topColumns();
+            histogramsInRange = histograms != null;
+            double[] values = new double[columns.size()];
+            boolean[] numeric = CsvLoader.streamFrom(file, oldSize, header, new CsvLoader.RowHandler() {
+                @Override
+                public void header(List<String> names) {
+                }
+
+                @Override
+                public void row(double[] raw) {
+                    for (int c = 0; c < values.length; c++) {
+                        values[c] = headerIndex[c] < raw.length ? raw[headerIndex[c]] : Double.NaN;
+                    }
+                    addRow(values, values[target], top);
+                    appendedRows++;
+                }
+            });
+            for (int index : headerIndex) {
+                if (index < 0 || !numeric[index]) {
+                    return false;
+                }
+            }
+            rows += appendedRows;
+            return true;
+        }
+    }
+
+    private void initAccumulators() {
+        moments = new Moments[columns.size()];
+        targetPairs = new CoMoment[columns.size()];
+        for (int c = 0; c < moments.length; c++) {
+            moments[c] = new Moments();
+            targetPairs[c] = new CoMoment();
+        }
+        int m = topFeatures.size() + 1;
+        topPairs = new CoMoment[m * (m - 1) / 2];
+        for (int p = 0; p < topPairs.length; p++) {
+            topPairs[p] = new CoMoment();
+        }
+    }
+
+    /** Column indices of the top features followed by the target. */
+    private int[] topColumns() {
+        int[] top = new int[topFeatures.size() + 1];
+        for (int i = 0; i < topFeatures.size(); i++) {
+            top[i] = columns.indexOf(topFeatures.get(i));
+        }
+        top[topFeatures.size()] = target;
+        return top;
+    }
+
+    private void addRow(double[] values, double y, int[] top) {
+        for (int c = 0; c < values.length; c++) {
+            if (!Double.isNaN(values[c])) {
+                moments[c].add(values[c]);
+            }
+        }
+        if (Double.isNaN(y)) {
+            return;
+        }
+        for (int c = 0; c < values.length; c++) {
+            if (!Double.isNaN(values[c])) {
+                targetPairs[c].add(values[c], y);
+            }
+        }
+        int pair = 0;
+        for (int i = 0; i < top.length; i++) {
+            for (int j = i + 1; j < top.length; j++) {
+                double a = top[i] >= 0 ? values[top[i]] : Double.NaN;
+                double b = top[j] >= 0 ? values[top[j]] : Double.NaN;
+                if (!Double.isNaN(a) && !Double.isNaN(b)) {
+                    topPairs[pair].add(a, b);
+                }
+                pair++;
+            }
+        }
+        if (histogramsInRange && histograms != null) {
+            for (ChartData.Distribution histogram : histograms) {
+                int column = columns.indexOf(histogram.feature);
+                if (column >= 0 && !Double.isNaN(values[column])) {
+                    histogramsInRange &= addToHistogram(histogram, values[column]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts a value into a numpy-style histogram (half-open bins, the last
+     * one closed). Returns false if it falls outside the edges, since numpy
+     * would then pick different edges.
+     */
+    private static boolean addToHistogram(ChartData.Distribution histogram, double value) {
+        double[] edges = histogram.edges;
+        if (edges == null || edges.length < 2 || value < edges[0] || value > edges[edges.length - 1]) {
+            return false;
+        }
+        int bin = Arrays.binarySearch(edges, value);
+        bin = bin >= 0 ? bin : -bin - 2;
+        histogram.counts[Math.min(bin, histogram.counts.length - 1)]++;
+        return true;
+    }
+
+    /**
+     * The top features by absolute correlation with the target, strongest
+     * first, as {@link CorrelationEngine#topFeatures} ranks them.
+     */
+    Map<String, Double> ranking(int count) {
+        double[] correlations = new double[targetPairs.length];
+        for (int c = 0; c < correlations.length; c++) {
+            correlations[c] = targetPairs[c].correlation();
+        }
+        Map<String, Double> ranking = new LinkedHashMap<>();
+        for (int column : CorrelationEngine.topFeatures(correlations, target, count)) {
+            ranking.put(columns.get(column), correlations[column]);
+        }
+        return ranking;
+    }
+
+    /** Correlation matrix of the top features and the target, as the script's heatmap. */
+    ChartData.Correlation correlation() {
+        int m = topFeatures.size() + 1;
+        double[][] matrix = new double[m][m];
+        int pair = 0;
+        for (int i = 0; i < m; i++) {
+            matrix[i][i] = 1.0;
+            for (int j = i + 1; j < m; j++) {
+                matrix[i][j] = topPairs[pair].correlation();
+                matrix[j][i] = matrix[i][j];
+                pair++;
+            }
+        }
+        ChartData.Correlation correlation = new ChartData.Correlation();
+        correlation.labels = new ArrayList<>(topFeatures);
+        correlation.labels.add(columns.get(target));
+        correlation.matrix = matrix;
+        return correlation;
+    }
+
+    List<String> getTopFeatures() {
+        return topFeatures;
+    }
+
+    List<ChartData.Distribution> getHistograms() {
+        return histograms;
+    }
+
+    /** False if an appended value fell outside the saved histograms' range. */
+    boolean areHistogramsInRange() {
+        return histogramsInRange;
+    }
+
+    String getCacheKey() {
+        return cacheKey;
+    }
+
+    /**
+     * SHA-256 of the file's bytes as hashed by build or appendFrom, for
+     * {@link AnalysisCache#key}, or null.
+     */
+    MessageDigest getContentDigest() {
+        return contentDigest;
+    }
+
+    long getAppendedRows() {
+        return appendedRows;
+    }
+
+    String summarize(double seconds) {
+        Moments y = moments[target];
+        return String.format("%,d rows (%,d appended), %d numeric columns - updated in %.2f s"
+                + "\nInfant mortality rate: mean %.2f, std %.2f, min %.2f, max %.2f (%,d missing)",
+            rows, appendedRows, columns.size(), seconds, y.mean, y.std(), y.min, y.max, rows - y.n);
+    }
+
+    /**
+     * Saves the state for the file, along with the cache entry holding the
+     * results it matches and the histograms shown with them.
+     */
+    void save(Path file, String scriptDigest, String cacheKey, List<ChartData.Distribution> histograms)
+            throws IOException {
+        this.scriptDigest = scriptDigest;
+        this.cacheKey = cacheKey;
+        this.histograms = histograms;
+        Path stateFile = stateFile(file);
+        Files.createDirectories(stateFile.getParent());
+        Path tmp = Files.createTempFile(stateFile.getParent(), stateFile.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, GSON.toJson(this).getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static Path stateFile(Path file) {
+        byte[] path = file.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8);
+        return AnalysisCache.shared().getRoot().resolve(AnalysisCache.hex(AnalysisCache.sha256().digest(path))
+            + ".incremental.json");
+    }
+
+    private static boolean endsRecord(FileChannel channel, long length) throws IOException {
+        ByteBuffer last = ByteBuffer.allocate(1);
+        return length > 0 && channel.read(last, length - 1) == 1 && last.get(0) == '\n';
+    }
+
+    /**
+     * Hashes the file's first size bytes in one pass, setting prefixDigest
+     * and contentDigest. If expected is given, the digest of the first
+     * checkedLength bytes must equal it; returns false, stopping early, if
+     * it does not.
+     */
+    private boolean hash(FileChannel channel, long checkedLength, String expected) throws IOException {
+        MessageDigest running = AnalysisCache.sha256();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        long position = 0;
+        while (position < size) {
+            // Stop a read at the checked length so its digest can be taken there
+            long end = position < checkedLength ? checkedLength : size;
+            buffer.clear().limit((int) Math.min(BUFFER_BYTES, end - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("The file is shorter than " + size + " bytes");
+            }
+            position += read;
+            buffer.flip();
+            running.update(buffer);
+            if (position == checkedLength && !expected.equals(prefixDigest(copy(running), checkedLength))) {
+                return false;
+            }
+        }
+        prefixDigest = prefixDigest(copy(running), size);
+        contentDigest = running;
+        return true;
+    }
+
+    /** Finishes a digest of a file's first length bytes, with the length appended. */
+    private static String prefixDigest(MessageDigest bytes, long length) {
+        bytes.update(ByteBuffer.allocate(Long.BYTES).putLong(0, length));
+        return AnalysisCache.hex(bytes.digest());
+    }
+
+    private static MessageDigest copy(MessageDigest digest) {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("SHA-256 digest cannot be copied", e);
+        }
+    }
+}
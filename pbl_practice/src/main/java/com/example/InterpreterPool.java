@@ -0,0 +1,372 @@
+package com.example;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Python interpreters started ahead of time with the analysis script in
+ * --worker mode, so pandas, matplotlib and sklearn are already imported when
+ * a job arrives. Each interpreter runs one stage at a time. A stage that
+ * finds no idle interpreter is run in a fresh process as before, and the
+ * pool tops itself back up in the background.
+ *
+ * Configured with system properties: pbl.pool.size (interpreters kept,
+ * default the core count up to 4; 0 disables the pool),
+ * pbl.pool.idleTimeout (seconds an interpreter may sit unused before it is
+ * stopped to free memory, default 600; 0 keeps them) and
+ * pbl.pool.healthInterval (seconds between pings of idle interpreters,
+ * default 30).
+ */
+final class InterpreterPool {
+
+    private static final String WORKER_READY = "worker_ready";
+    private static final String JOB_FINISHED = "job_finished";
+    private static final String PONG = "pong";
+
+    /** Queued by an interpreter's reader thread when its output ends. */
+    private static final String EOF = new String("EOF");
+
+    private static final long READY_TIMEOUT_SECONDS = 120;
+    private static final long PING_TIMEOUT_SECONDS = 5;
+
+    private static InterpreterPool shared;
+
+    private final String scriptPath;
+    private final int size;
+    private final long idleTimeoutMillis;
+    private final BlockingDeque<Interpreter> idle = new LinkedBlockingDeque<>();
+    /** Interpreters starting, idle or running a job. */
+    private final AtomicInteger live = new AtomicInteger();
+    /** Runs the health checks only; interpreters start on their own threads. */
+    private final ScheduledExecutorService maintenance;
+    /** One thread per starting interpreter, so a pool warms up in the time of one start. */
+    private final ExecutorService starter;
+    private volatile boolean closed;
+    /** Set when python could not be started; retried on misses, not by health checks. */
+    private volatile boolean startFailed;
+
+    InterpreterPool(String scriptPath, int size, long idleTimeoutSeconds, long healthIntervalSeconds) {
+        this.scriptPath = scriptPath;
+        this.size = size;
+        this.idleTimeoutMillis = TimeUnit.SECONDS.toMillis(idleTimeoutSeconds);
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "interpreter-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::checkHealth,
+            healthIntervalSeconds, healthIntervalSeconds, TimeUnit.SECONDS);
+        AtomicInteger starts = new AtomicInteger();
+        this.starter = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "interpreter-start-" + starts.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates the shared pool and starts filling it in the background.
+     * Returns immediately; does nothing if the pool is disabled.
+     */
+    static synchronized void startShared() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int size = Integer.getInteger("pbl.pool.size", Math.min(4, cores));
+        if (shared != null || size <= 0) {
+            return;
+        }
+        try {
+            shared = new InterpreterPool(ScriptRunner.scriptPath(PrimaryController.SCRIPT_RESOURCE), size,
+                Long.getLong("pbl.pool.idleTimeout", 600), Math.max(1, Long.getLong("pbl.pool.healthInterval", 30)));
+        } catch (IOException e) {
+            System.err.println("Interpreter pool disabled: " + e.getMessage());
+            return;
+        }
+        shared.replenish();
+    }
+
+    static synchronized InterpreterPool sharedIfStarted() {
+        return shared;
+    }
+
+    static synchronized void shutdownShared() {
+        if (shared != null) {
+            shared.close();
+            shared = null;
+        }
+    }
+
+    boolean serves(String scriptPath) {
+        return this.scriptPath.equals(scriptPath);
+    }
+
+    /**
+     * Runs the script with the given arguments on an idle interpreter,
+     * passing each output line to the listener, and returns the output. As
+     * with {@link ScriptRunner#run}, a non-zero status becomes an
+     * IOException and cancelling the group kills the interpreter. Returns
+     * null without running anything if no interpreter is idle.
+     */
+    String tryRun(List<String> args, Consumer<String> lineListener, ProcessGroup group)
+            throws IOException, InterruptedException {
+        Interpreter interpreter = idle.pollFirst();
+        if (interpreter == null) {
+            Metrics.counter("pool.misses").increment();
+            replenish();
+            return null;
+        }
+        Metrics.counter("pool.hits").increment();
+        if (group != null && !group.add(interpreter.process)) {
+            idle.addFirst(interpreter);
+            throw new CancellationException("Job cancelled");
+        }
+
+        long start = System.nanoTime();
+        boolean reusable = false;
+        try {
+            JsonObject request = new JsonObject();
+            JsonArray argv = new JsonArray();
+            args.forEach(argv::add);
+            request.add("args", argv);
+            interpreter.send(request);
+
+            StringBuilder output = new StringBuilder();
+            while (true) {
+                String line = interpreter.lines.take();
+                if (line == EOF) {
+                    if (group != null && group.isCancelled()) {
+                        throw new CancellationException("Job cancelled");
+                    }
+                    throw new IOException("Python interpreter exited during the job:\n" + output);
+                }
+                AnalysisEvent event = AnalysisEvent.parse(line);
+                if (event != null && JOB_FINISHED.equals(event.getType())) {
+                    reusable = true;
+                    Metrics.timer("script.run").recordSince(start);
+                    int status = event.get("status").getAsInt();
+                    if (status != 0) {
+                        Metrics.counter("script.failures").increment();
+                        throw new IOException("Script exited with code " + status + ":\n" + output);
+                    }
+                    return output.toString();
+                }
+                output.append(line).append("\n");
+                lineListener.accept(line);
+            }
+        } finally {
+            if (group != null) {
+                group.remove(interpreter.process);
+            }
+            if (reusable) {
+                release(interpreter);
+            } else {
+                // Cancelled, interrupted or crashed mid-job: its state is unknown
+                discard(interpreter);
+            }
+        }
+    }
+
+    private void release(Interpreter interpreter) {
+        if (closed || !interpreter.process.isAlive()) {
+            discard(interpreter);
+            return;
+        }
+        interpreter.lastUsed = System.currentTimeMillis();
+        idle.addFirst(interpreter);
+    }
+
+    private void discard(Interpreter interpreter) {
+        interpreter.close();
+        live.decrementAndGet();
+        replenish();
+    }
+
+    /** Starts interpreters in the background until the pool is full again. */
+    private void replenish() {
+        while (!closed) {
+            int current = live.get();
+            if (current >= size) {
+                return;
+            }
+            if (live.compareAndSet(current, current + 1)) {
+                starter.execute(this::startInterpreter);
+            }
+        }
+    }
+
+    private void startInterpreter() {
+        if (closed) {
+            live.decrementAndGet();
+            return;
+        }
+        long start = System.nanoTime();
+        Interpreter interpreter = null;
+        try {
+            interpreter = new Interpreter(ScriptRunner.processBuilder(scriptPath, Collections.singletonList("--worker")).start());
+            Metrics.timer("process.spawn").recordSince(start);
+            if (!interpreter.awaitEvent(WORKER_READY, READY_TIMEOUT_SECONDS)) {
+                // Broken Python environment; stages fall back to fresh processes
+                // and report the real error. Try again on the next miss.
+                System.err.println("Interpreter pool: python did not start in worker mode");
+                startFailed = true;
+                interpreter.close();
+                live.decrementAndGet();
+                return;
+            }
+        } catch (IOException e) {
+            System.err.println("Interpreter pool: could not start python: " + e.getMessage());
+            startFailed = true;
+            live.decrementAndGet();
+            return;
+        } catch (InterruptedException e) {
+            // Pool closed while this interpreter was importing
+            interpreter.close();
+            live.decrementAndGet();
+            return;
+        }
+        Metrics.timer("pool.warmup").recordSince(start);
+        startFailed = false;
+        if (closed) {
+            interpreter.close();
+            live.decrementAndGet();
+            return;
+        }
+        interpreter.lastUsed = System.currentTimeMillis();
+        idle.addLast(interpreter);
+    }
+
+    /**
+     * Pings the idle interpreters, replacing any that have died or stopped
+     * answering, and stops those that have been idle too long.
+     */
+    private void checkHealth() {
+        long now = System.currentTimeMillis();
+        boolean expired = false;
+        // One at a time, so the others stay available to jobs meanwhile
+        for (Interpreter candidate : new ArrayList<>(idle)) {
+            if (!idle.remove(candidate)) {
+                continue;
+            }
+            if (idleTimeoutMillis > 0 && now - candidate.lastUsed > idleTimeoutMillis) {
+                candidate.close();
+                live.decrementAndGet();
+                expired = true;
+                continue;
+            }
+            boolean healthy;
+            try {
+                JsonObject ping = new JsonObject();
+                ping.addProperty("ping", true);
+                candidate.send(ping);
+                healthy = candidate.awaitEvent(PONG, PING_TIMEOUT_SECONDS);
+            } catch (IOException e) {
+                healthy = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                candidate.close();
+                live.decrementAndGet();
+                return;
+            }
+            if (healthy) {
+                idle.addLast(candidate);
+            } else {
+                Metrics.counter("pool.unhealthy").increment();
+                candidate.close();
+                live.decrementAndGet();
+            }
+        }
+        // Interpreters stopped for being idle come back on the next miss
+        if (!expired && !startFailed) {
+            replenish();
+        }
+    }
+
+    void close() {
+        closed = true;
+        maintenance.shutdownNow();
+        starter.shutdownNow();
+        Interpreter interpreter;
+        while ((interpreter = idle.pollFirst()) != null) {
+            interpreter.close();
+        }
+    }
+
+    private static final class Interpreter {
+        final Process process;
+        final BufferedWriter writer;
+        final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        volatile long lastUsed;
+
+        Interpreter(Process process) {
+            this.process = process;
+            this.writer = new BufferedWriter(
+                new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+            Thread reader = new Thread(this::readLines, "interpreter-reader-" + process.pid());
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        private void readLines() {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
+            } catch (IOException e) {
+                // Process killed; EOF below tells whoever is waiting
+            }
+            lines.add(EOF);
+        }
+
+        void send(JsonObject request) throws IOException {
+            writer.write(request.toString());
+            writer.newLine();
+            writer.flush();
+        }
+
+        /** Skips output until the given event; false on timeout or exit. */
+        boolean awaitEvent(String type, long timeoutSeconds) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+            while (true) {
+                String line = lines.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (line == null || line == EOF) {
+                    return false;
+                }
+                AnalysisEvent event = AnalysisEvent.parse(line);
+                if (event != null && type.equals(event.getType())) {
+                    return true;
+                }
+            }
+        }
+
+        void close() {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                // Process is going away anyway
+            }
+            process.destroyForcibly();
+        }
+    }
+}
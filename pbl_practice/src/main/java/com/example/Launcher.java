@@ -0,0 +1,27 @@
+package com.example;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import javafx.application.Application;
+
+/**
+ * Entry point that does not extend Application. The java launcher starts
+ * the JavaFX toolkit before main() when the main class is an Application,
+ * which fails on machines without a display; starting here lets
+ * {@code --serve [port]} run the prediction service headless.
+ */
+public final class Launcher {
+
+    private Launcher() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Metrics.startReporting();
+        if (Arrays.asList(args).contains("--serve")) {
+            PredictionServer.run(args);
+            return;
+        }
+        Application.launch(App.class, args);
+    }
+}
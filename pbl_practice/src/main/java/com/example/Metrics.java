@@ -0,0 +1,315 @@
+package com.example;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Process-wide latency timers and counters for the expensive steps: process
+ * spawns, script phases, image decodes, JSON parsing and predictions.
+ * Metrics are created on first use by name and are cheap enough to record
+ * from any thread. Once reporting is started they are also registered as
+ * JMX MXBeans under {@code com.example.pbl} and appended periodically to a
+ * JSON-lines file (pbl.metrics.file, default metrics.jsonl; empty disables;
+ * every pbl.metrics.interval seconds, default 60).
+ */
+public final class Metrics {
+
+    static final String JMX_DOMAIN = "com.example.pbl";
+
+    private static final Map<String, Timer> TIMERS = new ConcurrentHashMap<>();
+    private static final Map<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+
+    private static ScheduledExecutorService reporter;
+    private static volatile boolean jmxEnabled;
+    private static long lastDumpedCount = -1;
+
+    private Metrics() {
+    }
+
+    public interface TimerMXBean {
+        long getCount();
+        double getMeanMillis();
+        double getP50Millis();
+        double getP95Millis();
+        double getP99Millis();
+        double getMaxMillis();
+    }
+
+    public interface CounterMXBean {
+        long getCount();
+    }
+
+    static Timer timer(String name) {
+        Timer timer = TIMERS.get(name);
+        if (timer == null) {
+            Timer created = new Timer();
+            timer = TIMERS.putIfAbsent(name, created);
+            if (timer == null) {
+                timer = created;
+                if (jmxEnabled) {
+                    register("Timer", name, created);
+                }
+            }
+        }
+        return timer;
+    }
+
+    static Counter counter(String name) {
+        Counter counter = COUNTERS.get(name);
+        if (counter == null) {
+            Counter created = new Counter();
+            counter = COUNTERS.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+                if (jmxEnabled) {
+                    register("Counter", name, created);
+                }
+            }
+        }
+        return counter;
+    }
+
+    /** All timers so far, sorted by name. */
+    static Map<String, Timer> timers() {
+        return new TreeMap<>(TIMERS);
+    }
+
+    /** All counters so far, sorted by name. */
+    static Map<String, Counter> counters() {
+        return new TreeMap<>(COUNTERS);
+    }
+
+    /**
+     * Registers the MXBeans and starts the periodic dump. Both happen on the
+     * reporter thread, since the platform MBean server is slow to create and
+     * should not hold up the first window.
+     */
+    static synchronized void startReporting() {
+        if (reporter != null) {
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.execute(() -> {
+            jmxEnabled = true;
+            TIMERS.forEach((name, timer) -> register("Timer", name, timer));
+            COUNTERS.forEach((name, counter) -> register("Counter", name, counter));
+        });
+
+        String file = System.getProperty("pbl.metrics.file", "metrics.jsonl");
+        if (!file.isEmpty()) {
+            Path path = Paths.get(file);
+            long interval = Math.max(1, Long.getLong("pbl.metrics.interval", 60));
+            reporter.scheduleWithFixedDelay(() -> dump(path), interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /** Stops the periodic dump, writing one last line first. */
+    static synchronized void stopReporting() {
+        if (reporter == null) {
+            return;
+        }
+        reporter.shutdownNow();
+        reporter = null;
+        String file = System.getProperty("pbl.metrics.file", "metrics.jsonl");
+        if (!file.isEmpty()) {
+            dump(Paths.get(file));
+        }
+    }
+
+    private static void register(String type, String name, Object bean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            server.registerMBean(bean, objectName);
+        } catch (InstanceAlreadyExistsException e) {
+            // Created while the existing metrics were being registered
+        } catch (JMException e) {
+            System.err.println("Metrics: could not register " + name + " with JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Appends the current totals as one JSON line, unless nothing has been
+     * recorded since the last line.
+     */
+    private static synchronized void dump(Path path) {
+        long total = 0;
+        JsonObject timers = new JsonObject();
+        for (Map.Entry<String, Timer> entry : timers().entrySet()) {
+            Timer timer = entry.getValue();
+            total += timer.getCount();
+            JsonObject json = new JsonObject();
+            json.addProperty("count", timer.getCount());
+            json.addProperty("mean_ms", timer.getMeanMillis());
+            json.addProperty("p50_ms", timer.getP50Millis());
+            json.addProperty("p95_ms", timer.getP95Millis());
+            json.addProperty("p99_ms", timer.getP99Millis());
+            json.addProperty("max_ms", timer.getMaxMillis());
+            timers.add(entry.getKey(), json);
+        }
+        JsonObject counters = new JsonObject();
+        for (Map.Entry<String, Counter> entry : counters().entrySet()) {
+            total += entry.getValue().getCount();
+            counters.addProperty(entry.getKey(), entry.getValue().getCount());
+        }
+        if (total == lastDumpedCount) {
+            return;
+        }
+        lastDumpedCount = total;
+
+        JsonObject line = new JsonObject();
+        line.addProperty("timestamp", System.currentTimeMillis());
+        line.add("timers", timers);
+        line.add("counters", counters);
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(line.toString());
+            writer.newLine();
+        } catch (IOException e) {
+            System.err.println("Metrics: could not write " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Latency histogram with four buckets per power of two of microseconds,
+     * so percentiles are within about 25% of the true value.
+     */
+    static final class Timer implements TimerMXBean {
+
+        private static final int BUCKETS = 256;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void recordNanos(long nanos) {
+            if (nanos < 0) {
+                return;
+            }
+            buckets.incrementAndGet(bucket(nanos / 1000));
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        /** Records the time since a {@link System#nanoTime()} reading. */
+        void recordSince(long startNanos) {
+            recordNanos(System.nanoTime() - startNanos);
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public double getMeanMillis() {
+            long n = count.sum();
+            return n == 0 ? 0 : totalNanos.sum() / 1e6 / n;
+        }
+
+        @Override
+        public double getP50Millis() {
+            return percentileMillis(0.50);
+        }
+
+        @Override
+        public double getP95Millis() {
+            return percentileMillis(0.95);
+        }
+
+        @Override
+        public double getP99Millis() {
+            return percentileMillis(0.99);
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+
+        /** Upper edge of the bucket holding the given quantile, capped at the maximum. */
+        double percentileMillis(double quantile) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(lowerBoundMicros(i + 1) / 1000.0, getMaxMillis());
+                }
+            }
+            return getMaxMillis();
+        }
+
+        private static int bucket(long micros) {
+            if (micros < 4) {
+                return (int) micros;
+            }
+            int octave = 63 - Long.numberOfLeadingZeros(micros);
+            int sub = (int) (micros >>> (octave - 2)) & 3;
+            return Math.min(octave * 4 + sub - 4, BUCKETS - 1);
+        }
+
+        private static double lowerBoundMicros(int bucket) {
+            if (bucket < 4) {
+                return bucket;
+            }
+            int octave = bucket / 4 + 1;
+            return Math.scalb(4.0 + bucket % 4, octave - 2);
+        }
+    }
+
+    static final class Counter implements CounterMXBean {
+
+        private final LongAdder count = new LongAdder();
+
+        void increment() {
+            count.increment();
+        }
+
+        void add(long n) {
+            count.add(n);
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+    }
+}
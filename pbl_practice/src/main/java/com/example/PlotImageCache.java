@@ -0,0 +1,78 @@
+package com.example;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javafx.scene.image.Image;
+import javafx.stage.Screen;
+
+/**
+ * Plot images decoded in the background at the size they are displayed,
+ * kept in a small LRU cache so that coming back to a screen does not decode
+ * them again. Entries are keyed by path, modification time and width, so a
+ * rewritten plot is decoded afresh, and are held softly so the heap can
+ * reclaim them under pressure. Only used from the FX thread.
+ */
+final class PlotImageCache {
+
+    private static final int MAX_ENTRIES = 32;
+
+    private static final PlotImageCache SHARED = new PlotImageCache(MAX_ENTRIES);
+
+    private final Map<String, SoftReference<Image>> images;
+
+    PlotImageCache(int maxEntries) {
+        this.images = new LinkedHashMap<String, SoftReference<Image>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SoftReference<Image>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    static PlotImageCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the image scaled to the given display width. A new image is
+     * still loading when returned; ImageView shows it once it is ready.
+     */
+    Image get(File file, double displayWidth) {
+        // Decode at device pixels so plots stay sharp on HiDPI screens
+        double width = Math.ceil(displayWidth * Screen.getPrimary().getOutputScaleX());
+        String key = file.getAbsolutePath() + "|" + file.lastModified() + "|" + (int) width;
+
+        SoftReference<Image> cached = images.get(key);
+        Image image = cached == null ? null : cached.get();
+        if (image == null || image.isError()) {
+            Metrics.counter("image.cache.misses").increment();
+            image = timedDecode(new Image(file.toURI().toString(), width, 0, true, true, true));
+            images.put(key, new SoftReference<>(image));
+        } else {
+            Metrics.counter("image.cache.hits").increment();
+        }
+        return image;
+    }
+
+    /**
+     * Loads the image at full resolution, in the background and uncached;
+     * for zooming into a single plot.
+     */
+    static Image fullResolution(File file) {
+        return timedDecode(new Image(file.toURI().toString(), true));
+    }
+
+    /** Records the time until a background-loaded image has finished decoding. */
+    private static Image timedDecode(Image image) {
+        long start = System.nanoTime();
+        image.progressProperty().addListener((obs, old, progress) -> {
+            if (progress.doubleValue() >= 1 && !image.isError()) {
+                Metrics.timer("image.decode").recordSince(start);
+            }
+        });
+        return image;
+    }
+}
@@ -0,0 +1,191 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded LRU cache of single predictions, keyed by the model version and
+ * the feature vector rounded to a tolerance, so re-submitting the same (or
+ * nearly the same) inputs skips the model. Entries for other model versions
+ * are dropped as soon as a retrained model is used.
+ *
+ * Configured with system properties: pbl.predictionCache.size (entries,
+ * default 1024; 0 disables) and pbl.predictionCache.tolerance (inputs
+ * closer than this share an entry, default 1e-6; 0 means exact).
+ */
+final class PredictionCache {
+
+    /** The files whose checksums make up the model version. */
+    private static final String[] VERSIONED_FILES = {"best_model.joblib", "scaler.joblib"};
+
+    private static PredictionCache shared;
+
+    /** Checksums by file, reused while the file's size and modification time are unchanged. */
+    private static final Map<Path, FileDigest> DIGESTS = new ConcurrentHashMap<>();
+
+    private final int maxEntries;
+    private final double tolerance;
+    private final LinkedHashMap<Key, Double> entries;
+    private String version;
+    private long hits;
+    private long lookups;
+
+    PredictionCache(int maxEntries, double tolerance) {
+        this.maxEntries = maxEntries;
+        this.tolerance = tolerance;
+        this.entries = new LinkedHashMap<Key, Double>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+                return size() > PredictionCache.this.maxEntries;
+            }
+        };
+    }
+
+    static synchronized PredictionCache shared() {
+        if (shared == null) {
+            shared = new PredictionCache(Integer.getInteger("pbl.predictionCache.size", 1024),
+                Double.parseDouble(System.getProperty("pbl.predictionCache.tolerance", "1e-6")));
+        }
+        return shared;
+    }
+
+    /** The cached prediction for the inputs under the given model version, or null. */
+    synchronized Double get(String modelVersion, double[] features) {
+        if (maxEntries <= 0) {
+            return null;
+        }
+        switchVersion(modelVersion);
+        lookups++;
+        Double prediction = entries.get(new Key(quantize(features)));
+        if (prediction != null) {
+            hits++;
+            Metrics.counter("predict.cache.hits").increment();
+        } else {
+            Metrics.counter("predict.cache.misses").increment();
+        }
+        return prediction;
+    }
+
+    synchronized void put(String modelVersion, double[] features, double prediction) {
+        if (maxEntries <= 0 || !modelVersion.equals(version)) {
+            // A newer model was used while this prediction was running
+            return;
+        }
+        entries.put(new Key(quantize(features)), prediction);
+    }
+
+    private void switchVersion(String modelVersion) {
+        if (!modelVersion.equals(version)) {
+            entries.clear();
+            version = modelVersion;
+        }
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getLookups() {
+        return lookups;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    private long[] quantize(double[] features) {
+        long[] key = new long[features.length];
+        for (int i = 0; i < features.length; i++) {
+            // NaN, infinities and values too large to bucket are keyed by their bits; the bits of those are
+            // never below 2^52 in magnitude, so they cannot collide with a bucket. + 0.0 folds -0.0 into 0.0
+            double bucket = tolerance > 0 ? features[i] / tolerance : Double.NaN;
+            key[i] = Math.abs(bucket) < 0x1p52 ? Math.round(bucket) : Double.doubleToLongBits(features[i] + 0.0);
+        }
+        return key;
+    }
+
+    /**
+     * Identifies the model in an output directory by the SHA-256 of its
+     * joblib files, so a retrained model gets a new version even when its
+     * features are unchanged.
+     */
+    static String modelVersion(Path outputDir) throws IOException {
+        MessageDigest version = AnalysisCache.sha256();
+        for (String name : VERSIONED_FILES) {
+            Path file = outputDir.resolve(name);
+            version.update(name.getBytes(StandardCharsets.UTF_8));
+            if (Files.isRegularFile(file)) {
+                version.update(digest(file));
+            }
+        }
+        return AnalysisCache.hex(version.digest());
+    }
+
+    private static byte[] digest(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        long size = Files.size(file);
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        FileDigest known = DIGESTS.get(key);
+        if (known != null && known.size == size && known.modified == modified) {
+            return known.digest;
+        }
+        MessageDigest digest = AnalysisCache.sha256();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        byte[] result = digest.digest();
+        DIGESTS.put(key, new FileDigest(size, modified, result));
+        return result;
+    }
+
+    private static final class FileDigest {
+        final long size;
+        final long modified;
+        final byte[] digest;
+
+        FileDigest(long size, long modified, byte[] digest) {
+            this.size = size;
+            this.modified = modified;
+            this.digest = digest;
+        }
+    }
+
+    private static final class Key {
+        private final long[] values;
+        private final int hash;
+
+        Key(long[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(values, ((Key) other).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
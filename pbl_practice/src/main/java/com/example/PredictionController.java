@@ -1,27 +1,31 @@
 package com.example;
 
+import javafx.application.Platform;
 import javafx.fxml.FXML;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.VBox;
 import javafx.scene.layout.HBox;
+import javafx.scene.layout.Region;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
+import javafx.stage.FileChooser;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-import java.lang.reflect.Type;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 
-import org.apache.commons.io.FileUtils;
-
 public class PredictionController {
     @FXML
     private VBox featureInputs;
@@ -29,42 +33,127 @@ public class PredictionController {
     @FXML
     private Label predictionResult;
     
+    @FXML
+    private ProgressBar batchProgress;
+    
+    @FXML
+    private Button batchButton;
+    
+    @FXML
+    private Label batchStatus;
+    
+    @FXML
+    private Label cacheStatus;
+    
+    @FXML
+    private VBox explanation;
+    
+    /** Features shown in the explanation, largest contribution first. */
+    private static final int EXPLAINED_FEATURES = 10;
+    
     private Map<String, TextField> featureFields = new HashMap<>();
     private List<String> featureNames;
-    private Object scaler;
-    private Object model;
+    /** The model behind the form, loading or loaded; null if it could not be read. */
+    private CompletableFuture<PredictionModel> model;
+    /** Artifacts the model was loaded from, to reload it when a new one is published. */
+    private String modelStamp;
     
     @FXML
     public void initialize() {
-        try {
-            // Load feature names
-            String featureNamesJson = new String(Files.readAllBytes(Paths.get("output_plots/feature_names.json")));
-            Type listType = new TypeToken<List<String>>(){}.getType();
-            featureNames = new Gson().fromJson(featureNamesJson, listType);
-            
-            // Create input fields for each feature
-            for (String feature : featureNames) {
-                HBox inputBox = new HBox(5);
-                Label label = new Label(feature + ":");
-                TextField textField = new TextField();
-                textField.setPromptText("Enter value");
-                featureFields.put(feature, textField);
-                
-                inputBox.getChildren().addAll(label, textField);
-                featureInputs.getChildren().add(inputBox);
+        // App keeps this screen once loaded; pick up a newly published model each time it is shown
+        featureInputs.sceneProperty().addListener((obs, oldScene, scene) -> {
+            if (scene != null) {
+                refreshModel();
             }
-            
-            // Load the scaler and model
-            scaler = FileUtils.readFileToByteArray(new File("output_plots/scaler.joblib"));
-            model = FileUtils.readFileToByteArray(new File("output_plots/best_model.joblib"));
-            
+        });
+    }
+    
+    /**
+     * Builds the form from feature_names.json straight away and loads the
+     * model in the background, unless the published artifacts are unchanged.
+     */
+    private void refreshModel() {
+        Path outputDir = Paths.get(PrimaryController.OUTPUT_DIR);
+        String stamp = PredictionModel.artifactStamp(outputDir);
+        if (stamp.equals(modelStamp)) {
+            return;
+        }
+        modelStamp = stamp;
+        try {
+            showFeatureFields(PredictionModel.readFeatureNames(outputDir));
         } catch (IOException e) {
+            modelStamp = null;
+            model = null;
             showError("Error loading prediction resources: " + e.getMessage());
+            return;
+        }
+        
+        CompletableFuture<PredictionModel> loading = PredictionModel.loadAsync(outputDir);
+        model = loading;
+        loading.whenComplete((loaded, error) -> Platform.runLater(() -> {
+            if (model != loading) {
+                return;
+            }
+            if (error != null) {
+                modelStamp = null;
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                showError("Error loading prediction resources: " + cause.getMessage());
+                return;
+            }
+            // Published again between reading the names and loading the model
+            showFeatureFields(loaded.getFeatureNames());
+            // Start the prediction worker now so the first click does not pay for interpreter startup
+            if (loaded.getForest() == null) {
+                try {
+                    PredictionWorker.shared().start();
+                } catch (IOException e) {
+                    showError("Error starting the prediction worker: " + e.getMessage());
+                }
+            }
+        }));
+        showCacheStatus();
+    }
+    
+    /** Creates an input field for each feature, keeping what was typed into fields that stay. */
+    private void showFeatureFields(List<String> names) {
+        if (names.equals(featureNames)) {
+            return;
+        }
+        Map<String, TextField> previous = featureFields;
+        featureFields = new HashMap<>();
+        featureInputs.getChildren().remove(1, featureInputs.getChildren().size());
+        for (String feature : names) {
+            HBox inputBox = new HBox(5);
+            Label label = new Label(feature + ":");
+            TextField textField = previous.getOrDefault(feature, new TextField());
+            textField.setPromptText("Enter value");
+            featureFields.put(feature, textField);
+            
+            inputBox.getChildren().addAll(label, textField);
+            featureInputs.getChildren().add(inputBox);
         }
+        featureNames = names;
+    }
+    
+    /** The loaded model, or null after telling the user why there is none yet. */
+    private PredictionModel loadedModel() {
+        if (model == null) {
+            showError("No model is available; run an analysis first");
+            return null;
+        }
+        if (!model.isDone()) {
+            showError("The model is still loading; please try again in a moment");
+            return null;
+        }
+        return model.isCompletedExceptionally() ? null : model.join();
     }
     
     @FXML
     private void predict() {
+        if (model == null || featureNames == null) {
+            showError("No model is available; run an analysis first");
+            return;
+        }
         try {
             // Collect feature values
             Map<String, Double> featureValues = new HashMap<>();
@@ -82,39 +171,199 @@ public class PredictionController {
                 }
             }
             
-            // Convert features to JSON
-            String featuresJson = new Gson().toJson(featureValues);
-            
-            // Get the path to the prediction script
-            java.net.URL scriptUrl = getClass().getResource("/scripts/predict.py");
-            if (scriptUrl == null) {
-                throw new IOException("Could not find prediction script");
+            double[] values = new double[featureNames.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = featureValues.get(featureNames.get(i));
             }
-            String scriptPath = new File(scriptUrl.toURI()).getAbsolutePath();
             
-            // Run Python script
-            ProcessBuilder pb = new ProcessBuilder("python", scriptPath, featuresJson);
-            Process process = pb.start();
+            // A form filled in while the model loads is answered once it is ready
+            CompletableFuture<PredictionModel> pending = model;
+            List<String> names = featureNames;
+            if (!pending.isDone()) {
+                predictionResult.setText("Loading model...");
+            }
+            pending.whenComplete((loaded, error) -> Platform.runLater(() -> {
+                if (error != null) {
+                    predictionResult.setText("");
+                    Throwable cause = error.getCause() != null ? error.getCause() : error;
+                    showError("Error loading prediction resources: " + cause.getMessage());
+                } else if (!loaded.getFeatureNames().equals(names)) {
+                    predictionResult.setText("");
+                    showError("The model changed while loading; please check the inputs and try again");
+                } else {
+                    predict(loaded, values);
+                }
+            }));
             
-            // Read the output
-            java.io.BufferedReader reader = new java.io.BufferedReader(
-                new java.io.InputStreamReader(process.getInputStream())
-            );
-            String prediction = reader.readLine();
+        } catch (Exception e) {
+            showError("Error making prediction: " + e.getMessage());
+        }
+    }
+    
+    private void predict(PredictionModel loaded, double[] values) {
+        try {
+            // Re-submitted inputs are answered from the cache while the model is unchanged
+            PredictionCache cache = PredictionCache.shared();
+            String version = loaded.getVersion();
+            Double cached = cache.get(version, values);
+            showCacheStatus();
+            ForestModel forest = loaded.getForest();
+            if (cached != null) {
+                predictionResult.setText(String.format("Predicted Infant Mortality Rate: %.2f per 1000 live births", 
+                    cached));
+                showExplanation(forest, loaded.getFeatureNames(), values);
+                return;
+            }
             
-            int exitCode = process.waitFor();
-            if (exitCode == 0 && prediction != null) {
+            if (forest != null) {
+                long start = System.nanoTime();
+                double prediction = forest.predict(values);
+                Metrics.timer("predict.forest").recordSince(start);
+                cache.put(version, values, prediction);
                 predictionResult.setText(String.format("Predicted Infant Mortality Rate: %.2f per 1000 live births", 
-                    Double.parseDouble(prediction)));
-            } else {
-                showError("Error making prediction");
+                    prediction));
+                showExplanation(forest, loaded.getFeatureNames(), values);
+                return;
             }
             
+            // Send the ordered feature vector to the long-lived prediction worker
+            showExplanation(null, null, null);
+            predictionResult.setText("Predicting...");
+            PredictionWorker.shared().predict(values).whenComplete((prediction, error) ->
+                Platform.runLater(() -> {
+                    if (error == null) {
+                        cache.put(version, values, prediction);
+                        predictionResult.setText(String.format("Predicted Infant Mortality Rate: %.2f per 1000 live births", 
+                            prediction));
+                    } else {
+                        predictionResult.setText("");
+                        Throwable cause = error.getCause() != null ? error.getCause() : error;
+                        showError("Error making prediction: " + cause.getMessage());
+                    }
+                }));
+            
         } catch (Exception e) {
             showError("Error making prediction: " + e.getMessage());
         }
     }
     
+    /**
+     * Lists each feature's TreeSHAP contribution as a bar, largest first:
+     * red bars raised the prediction above the average, green ones lowered
+     * it. Hidden when predictions come from the Python worker.
+     */
+    private void showExplanation(ForestModel forest, List<String> names, double[] values) {
+        explanation.getChildren().clear();
+        boolean shown = forest != null && forest.canExplain();
+        explanation.setVisible(shown);
+        explanation.setManaged(shown);
+        if (!shown) {
+            return;
+        }
+        
+        double[] contributions = forest.explain(values);
+        Integer[] order = new Integer[contributions.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(i -> -Math.abs(contributions[i])));
+        double largest = Math.max(Math.abs(contributions[order[0]]), 1e-12);
+        
+        Label title = new Label("Why this prediction");
+        title.setStyle("-fx-font-size: 16px; -fx-font-weight: bold; -fx-text-fill: #2c3e50;");
+        Label baseline = new Label(String.format("Starting from the average prediction of %.2f:", 
+            forest.getExpectedValue()));
+        baseline.setStyle("-fx-font-size: 12px; -fx-text-fill: #7f8c8d;");
+        explanation.getChildren().addAll(title, baseline);
+        for (int rank = 0; rank < Math.min(EXPLAINED_FEATURES, order.length); rank++) {
+            int feature = order[rank];
+            double contribution = contributions[feature];
+            Label name = new Label(names.get(feature));
+            name.setPrefWidth(220);
+            name.setStyle("-fx-font-size: 12px;");
+            Region bar = new Region();
+            bar.setPrefSize(Math.max(1, 150 * Math.abs(contribution) / largest), 12);
+            bar.setMinWidth(Region.USE_PREF_SIZE);
+            bar.setStyle("-fx-background-color: " + (contribution > 0 ? "#e74c3c" : "#27ae60") + ";");
+            Label amount = new Label(String.format("%+.2f", contribution));
+            amount.setStyle("-fx-font-size: 12px; -fx-text-fill: #7f8c8d;");
+            HBox row = new HBox(8, name, bar, amount);
+            row.setAlignment(Pos.CENTER_LEFT);
+            explanation.getChildren().add(row);
+        }
+    }
+    
+    private void showCacheStatus() {
+        PredictionCache cache = PredictionCache.shared();
+        if (!cache.isEnabled() || cache.getLookups() == 0) {
+            cacheStatus.setText("");
+            return;
+        }
+        cacheStatus.setText(String.format("Prediction cache: %d of %d lookups hit (%.0f%%), %d entries",
+            cache.getHits(), cache.getLookups(), 100.0 * cache.getHits() / cache.getLookups(), cache.size()));
+    }
+    
+    @FXML
+    private void batchPredict() {
+        PredictionModel loaded = loadedModel();
+        if (loaded == null) {
+            return;
+        }
+        
+        FileChooser inputChooser = new FileChooser();
+        inputChooser.setTitle("Select CSV File to Score");
+        inputChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV Files", "*.csv"));
+        File input = inputChooser.showOpenDialog(featureInputs.getScene().getWindow());
+        if (input == null) {
+            return;
+        }
+        
+        FileChooser outputChooser = new FileChooser();
+        outputChooser.setTitle("Save Predictions As");
+        outputChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV Files", "*.csv"));
+        outputChooser.setInitialDirectory(input.getParentFile());
+        outputChooser.setInitialFileName(input.getName().replaceFirst("\\.csv$", "") + "_predictions.csv");
+        File output = outputChooser.showSaveDialog(featureInputs.getScene().getWindow());
+        if (output == null) {
+            return;
+        }
+        
+        // One run at a time; the button comes back when this one ends, however it ends
+        batchButton.setDisable(true);
+        batchProgress.setProgress(0);
+        batchProgress.setVisible(true);
+        batchProgress.setManaged(true);
+        batchStatus.setText("Scoring " + input.getName() + "...");
+        
+        BatchPredictor batch = new BatchPredictor(loaded.getFeatureNames(), loaded.getForest());
+        Thread worker = new Thread(() -> {
+            try {
+                BatchPredictor.Result result = batch.run(input.toPath(), output.toPath(),
+                    progress -> Platform.runLater(() -> batchProgress.setProgress(progress)));
+                Platform.runLater(() -> {
+                    batchButton.setDisable(false);
+                    batchProgress.setVisible(false);
+                    batchProgress.setManaged(false);
+                    batchStatus.setText(String.format(
+                        "Scored %,d rows in %.2f s (%,.0f rows/sec)%s\nSaved to %s",
+                        result.getRows(), result.getSeconds(), result.getRowsPerSecond(),
+                        result.getSkipped() > 0 ? String.format(", %,d skipped for missing values", result.getSkipped()) : "",
+                        output.getAbsolutePath()));
+                });
+            } catch (IOException | RuntimeException e) {
+                Platform.runLater(() -> {
+                    batchButton.setDisable(false);
+                    batchProgress.setVisible(false);
+                    batchProgress.setManaged(false);
+                    batchStatus.setText("");
+                    showError("Batch prediction failed: " + e.getMessage());
+                });
+            }
+        }, "batch-prediction");
+        worker.setDaemon(true);
+        worker.start();
+    }
+    
     @FXML
     private void goBack() throws IOException {
         App.setRoot("primary");
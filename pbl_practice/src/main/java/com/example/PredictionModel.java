@@ -0,0 +1,165 @@
+package com.example;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * The feature schema and model loaded from one analysis output directory.
+ * Predictions use the exported forest in-process when there is one and the
+ * Python prediction worker otherwise. Instances are immutable, so a new
+ * model can be swapped in while requests still hold the old one.
+ */
+final class PredictionModel {
+
+    /** The files a model is loaded from. */
+    static final List<String> ARTIFACTS = Collections.unmodifiableList(Arrays.asList(
+        "feature_names.json", "scaler.joblib", "best_model.joblib", ForestModel.FILE_NAME));
+
+    private static final Executor LOADER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "model-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<String> featureNames;
+    private final ForestModel forest;
+    private final String version;
+    private final long loadedAt = System.currentTimeMillis();
+
+    private PredictionModel(List<String> featureNames, ForestModel forest, String version) {
+        this.featureNames = featureNames;
+        this.forest = forest;
+        this.version = version;
+    }
+
+    /**
+     * Reads feature_names.json and, if present, the exported forest. Fails
+     * if the two disagree, e.g. while new artifacts are still being copied.
+     */
+    static PredictionModel load(Path outputDir) throws IOException {
+        List<String> names = readFeatureNames(outputDir);
+
+        ForestModel forest = null;
+        Path forestFile = outputDir.resolve(ForestModel.FILE_NAME);
+        if (Files.exists(forestFile)) {
+            forest = ForestModel.load(forestFile);
+            if (forest.getFeatureCount() != names.size()) {
+                throw new IOException(String.format("%s has %d features but feature_names.json lists %d",
+                    ForestModel.FILE_NAME, forest.getFeatureCount(), names.size()));
+            }
+        }
+        return new PredictionModel(names, forest, PredictionCache.modelVersion(outputDir));
+    }
+
+    /**
+     * Loads the model on a background thread, since the forest and the
+     * model checksum take a while for large models.
+     */
+    static CompletableFuture<PredictionModel> loadAsync(Path outputDir) {
+        CompletableFuture<PredictionModel> result = new CompletableFuture<>();
+        LOADER.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                result.complete(load(outputDir));
+                Metrics.timer("predict.model_load").recordSince(start);
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /** Reads just feature_names.json, which is small enough to read on the FX thread. */
+    static List<String> readFeatureNames(Path outputDir) throws IOException {
+        List<String> names;
+        try {
+            String json = new String(Files.readAllBytes(outputDir.resolve("feature_names.json")), StandardCharsets.UTF_8);
+            Type listType = new TypeToken<List<String>>(){}.getType();
+            long start = System.nanoTime();
+            names = new Gson().fromJson(json, listType);
+            Metrics.timer("json.feature_names").recordSince(start);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid feature_names.json: " + e.getMessage(), e);
+        }
+        if (names == null || names.isEmpty()) {
+            throw new IOException("No features listed in feature_names.json");
+        }
+        return Collections.unmodifiableList(new ArrayList<>(names));
+    }
+
+    /**
+     * Sizes and modification times of the artifacts, which change whenever a
+     * new model is published.
+     */
+    static String artifactStamp(Path outputDir) {
+        StringBuilder stamp = new StringBuilder();
+        for (String artifact : ARTIFACTS) {
+            Path file = outputDir.resolve(artifact);
+            try {
+                stamp.append(Files.size(file)).append(':').append(Files.getLastModifiedTime(file).toMillis());
+            } catch (IOException e) {
+                stamp.append('-');
+            }
+            stamp.append(';');
+        }
+        return stamp.toString();
+    }
+
+    public List<String> getFeatureNames() {
+        return featureNames;
+    }
+
+    /** The in-process forest, or null if predictions go to the Python worker. */
+    public ForestModel getForest() {
+        return forest;
+    }
+
+    /** Checksum of the saved model and scaler; changes whenever the model is retrained. */
+    public String getVersion() {
+        return version;
+    }
+
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    /**
+     * Predicts every row, each ordered as in {@link #getFeatureNames()}.
+     * Several rows go to the worker as one shared matrix.
+     */
+    public CompletableFuture<double[]> predict(double[][] rows) {
+        if (forest != null) {
+            long start = System.nanoTime();
+            double[] predictions = new double[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                predictions[i] = forest.predict(rows[i]);
+            }
+            Metrics.timer("predict.forest").recordSince(start);
+            return CompletableFuture.completedFuture(predictions);
+        }
+        PredictionWorker worker;
+        try {
+            worker = PredictionWorker.shared();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (rows.length == 1) {
+            return worker.predict(rows[0]).thenApply(prediction -> new double[] {prediction});
+        }
+        return worker.predictBatch(featureNames, rows);
+    }
+}
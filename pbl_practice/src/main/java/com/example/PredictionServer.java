@@ -0,0 +1,364 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Headless prediction service on the JDK HTTP server, started with
+ * {@code Launcher --serve [port]}.
+ *
+ * <ul>
+ * <li>GET /schema returns the feature names in the order arrays must use.</li>
+ * <li>POST /predict takes {"features": ...} for one prediction or
+ * {"instances": [...]} for a batch; each instance is either an array of
+ * values in schema order or an object keyed by feature name.</li>
+ * <li>GET /health reports whether a model is loaded.</li>
+ * </ul>
+ *
+ * Requests run on a bounded pool (-Dpbl.serve.threads, twice the cores by
+ * default). The model is reloaded when the artifacts in output_plots/
+ * change; each request uses the model that was current when it started, so
+ * a reload never fails requests already in flight.
+ */
+public final class PredictionServer {
+
+    static final int DEFAULT_PORT = 8080;
+
+    private static final Set<String> MODEL_FILES = new HashSet<>(PredictionModel.ARTIFACTS);
+    private static final long RELOAD_DELAY_MS = 500;
+    private static final long RETRY_DELAY_MS = 2000;
+    private static final int MAX_RETRIES = 5;
+
+    private final Path outputDir;
+    private final AtomicReference<PredictionModel> model = new AtomicReference<>();
+    private final ScheduledExecutorService reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "model-reloader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ScheduledFuture<?> pendingReload;
+    private int retries;
+    private HttpServer server;
+    private ExecutorService requestPool;
+    private WatchService watcher;
+
+    PredictionServer(Path outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    /**
+     * Runs the service until the process is stopped.
+     */
+    static void run(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        List<String> options = Arrays.asList(args);
+        int index = options.indexOf("--serve");
+        if (index >= 0 && index + 1 < args.length) {
+            try {
+                port = Integer.parseInt(args[index + 1]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid port: " + args[index + 1]);
+            }
+        }
+        PredictionServer service = new PredictionServer(Paths.get(PrimaryController.OUTPUT_DIR));
+        Runtime.getRuntime().addShutdownHook(new Thread(service::stop, "prediction-server-shutdown"));
+        service.start(port);
+        System.out.println("Serving predictions on port " + service.getPort());
+    }
+
+    void start(int port) throws IOException {
+        reload();
+
+        // Without TCP_NODELAY, small responses wait on delayed ACKs (~40 ms each)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+
+        int threads = Integer.getInteger("pbl.serve.threads", Runtime.getRuntime().availableProcessors() * 2);
+        AtomicInteger count = new AtomicInteger();
+        requestPool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "prediction-request-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server = HttpServer.create(new InetSocketAddress(port), 1024);
+        server.setExecutor(requestPool);
+        server.createContext("/schema", this::handleSchema);
+        server.createContext("/predict", this::handlePredict);
+        server.createContext("/health", this::handleHealth);
+        server.start();
+
+        watchArtifacts();
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    void stop() {
+        if (server != null) {
+            // Give in-flight requests a moment to finish
+            server.stop(1);
+            requestPool.shutdown();
+        }
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                System.err.println("Could not close artifact watcher: " + e.getMessage());
+            }
+        }
+        reloader.shutdownNow();
+        PredictionWorker.shutdownShared();
+        Metrics.stopReporting();
+    }
+
+    /**
+     * Loads the artifacts and swaps them in. On failure, e.g. while files are
+     * half copied, the previous model stays in service and the load is
+     * retried a few times.
+     */
+    void reload() {
+        try {
+            PredictionModel loaded = PredictionModel.load(outputDir);
+            model.set(loaded);
+            synchronized (this) {
+                retries = 0;
+            }
+            System.out.println("Loaded model with " + loaded.getFeatureNames().size() + " features ("
+                + (loaded.getForest() != null ? "in-process forest" : "Python worker") + ")");
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not load model from " + outputDir + ": " + e.getMessage());
+            synchronized (this) {
+                if (server != null && retries++ < MAX_RETRIES) {
+                    pendingReload = reloader.schedule(this::reload, RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    private void watchArtifacts() throws IOException {
+        watcher = FileSystems.getDefault().newWatchService();
+        outputDir.toFile().mkdirs();
+        outputDir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watcher.take();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        Object context = event.context();
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                                || (context instanceof Path && MODEL_FILES.contains(context.toString()))) {
+                            scheduleReload();
+                        }
+                    }
+                    key.reset();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // Server stopped
+            }
+        }, "artifact-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Artifacts are replaced one after another; wait for the burst to end
+    private synchronized void scheduleReload() {
+        if (pendingReload != null) {
+            pendingReload.cancel(false);
+        }
+        retries = 0;
+        pendingReload = reloader.schedule(this::reload, RELOAD_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void handleSchema(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Use GET");
+                return;
+            }
+            PredictionModel current = model.get();
+            if (current == null) {
+                sendError(exchange, 503, "No model loaded");
+                return;
+            }
+            JsonObject response = new JsonObject();
+            JsonArray features = new JsonArray();
+            current.getFeatureNames().forEach(features::add);
+            response.add("features", features);
+            response.addProperty("model", current.getForest() != null ? "forest" : "python");
+            response.addProperty("loadedAt", current.getLoadedAt());
+            send(exchange, 200, response);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        try {
+            JsonObject response = new JsonObject();
+            response.addProperty("status", model.get() != null ? "ok" : "no model");
+            send(exchange, model.get() != null ? 200 : 503, response);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handlePredict(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Use POST");
+                return;
+            }
+            PredictionModel current = model.get();
+            if (current == null) {
+                sendError(exchange, 503, "No model loaded");
+                return;
+            }
+
+            JsonObject request;
+            try (InputStream body = exchange.getRequestBody()) {
+                String text = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+                long parseStart = System.nanoTime();
+                request = JsonParser.parseString(text).getAsJsonObject();
+                Metrics.timer("json.request").recordSince(parseStart);
+            } catch (JsonParseException | IllegalStateException e) {
+                sendError(exchange, 400, "Request body must be a JSON object");
+                return;
+            }
+
+            boolean batch = request.has("instances");
+            double[][] rows;
+            try {
+                if (batch) {
+                    JsonArray instances = request.getAsJsonArray("instances");
+                    rows = new double[instances.size()][];
+                    for (int i = 0; i < rows.length; i++) {
+                        rows[i] = toRow(instances.get(i), current.getFeatureNames());
+                    }
+                } else if (request.has("features")) {
+                    rows = new double[][] { toRow(request.get("features"), current.getFeatureNames()) };
+                } else {
+                    sendError(exchange, 400, "Expected \"features\" or \"instances\"");
+                    return;
+                }
+            } catch (IllegalArgumentException | IllegalStateException | ClassCastException e) {
+                sendError(exchange, 400, e.getMessage());
+                return;
+            }
+
+            double[] predictions;
+            try {
+                predictions = current.predict(rows).get();
+            } catch (ExecutionException e) {
+                sendError(exchange, 500, "Prediction failed: " + e.getCause().getMessage());
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                sendError(exchange, 503, "Interrupted");
+                return;
+            }
+
+            JsonObject response = new JsonObject();
+            if (batch) {
+                JsonArray values = new JsonArray(predictions.length);
+                for (double prediction : predictions) {
+                    values.add(prediction);
+                }
+                response.add("predictions", values);
+            } else {
+                response.addProperty("prediction", predictions[0]);
+            }
+            send(exchange, 200, response);
+        } finally {
+            exchange.close();
+            Metrics.timer("http.predict").recordSince(start);
+        }
+    }
+
+    /**
+     * Converts one instance, an array in schema order or an object keyed by
+     * feature name, into a feature vector.
+     */
+    static double[] toRow(JsonElement instance, List<String> featureNames) {
+        double[] row = new double[featureNames.size()];
+        if (instance.isJsonArray()) {
+            JsonArray values = instance.getAsJsonArray();
+            if (values.size() != row.length) {
+                throw new IllegalArgumentException(
+                    "Expected " + row.length + " feature values but got " + values.size());
+            }
+            for (int i = 0; i < row.length; i++) {
+                row[i] = number(values.get(i), featureNames.get(i));
+            }
+        } else if (instance.isJsonObject()) {
+            JsonObject values = instance.getAsJsonObject();
+            for (int i = 0; i < row.length; i++) {
+                JsonElement value = values.get(featureNames.get(i));
+                if (value == null) {
+                    throw new IllegalArgumentException("Missing feature: " + featureNames.get(i));
+                }
+                row[i] = number(value, featureNames.get(i));
+            }
+        } else {
+            throw new IllegalArgumentException("Each instance must be an array or an object");
+        }
+        return row;
+    }
+
+    private static double number(JsonElement value, String feature) {
+        if (!value.isJsonPrimitive() || !value.getAsJsonPrimitive().isNumber()) {
+            throw new IllegalArgumentException("Invalid number for " + feature + ": " + value);
+        }
+        return value.getAsDouble();
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        Metrics.counter("http.errors").increment();
+        JsonObject response = new JsonObject();
+        response.addProperty("error", message);
+        send(exchange, status, response);
+    }
+
+    private static void send(HttpExchange exchange, int status, JsonObject response) throws IOException {
+        byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.example;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Long-lived predict.py process that keeps the scaler and model loaded.
+ * Requests and responses are single JSON lines matched by id, so several
+ * predictions can be in flight at once. Batches of rows go through a
+ * {@link SharedMatrix} instead of JSON, kept and reused from one batch to
+ * the next. If the process dies it is started again on the next request.
+ * Requests unanswered after pbl.predict.timeout seconds (default 120) fail
+ * rather than wait forever.
+ */
+public class PredictionWorker implements AutoCloseable {
+
+    private static final long TIMEOUT_SECONDS = Math.max(1, Long.getLong("pbl.predict.timeout", 120));
+
+    private static PredictionWorker shared;
+
+    private final String scriptPath;
+    private final AtomicLong nextId = new AtomicLong();
+    private Connection connection;
+    private boolean closed;
+    /** Matrices no batch is using, guarded by this worker's lock. */
+    private final Deque<SharedMatrix> idleMatrices = new ArrayDeque<>();
+
+    PredictionWorker(String scriptPath) {
+        this.scriptPath = scriptPath;
+    }
+
+    static synchronized PredictionWorker shared() throws IOException {
+        if (shared == null) {
+            java.net.URL scriptUrl = PredictionWorker.class.getResource("/scripts/predict.py");
+            if (scriptUrl == null) {
+                throw new IOException("Could not find prediction script");
+            }
+            try {
+                shared = new PredictionWorker(new File(scriptUrl.toURI()).getAbsolutePath());
+            } catch (java.net.URISyntaxException e) {
+                throw new IOException("Invalid prediction script location: " + scriptUrl, e);
+            }
+        }
+        return shared;
+    }
+
+    static synchronized void shutdownShared() {
+        if (shared != null) {
+            shared.close();
+            shared = null;
+        }
+    }
+
+    /**
+     * Starts the Python process ahead of the first request so that the
+     * interpreter and model loading happen while the user is typing.
+     */
+    public synchronized void start() throws IOException {
+        ensureRunning();
+    }
+
+    /**
+     * Sends one feature vector, ordered as in feature_names.json.
+     */
+    public CompletableFuture<Double> predict(double[] features) {
+        long start = System.nanoTime();
+        JsonObject request = new JsonObject();
+        JsonArray values = new JsonArray();
+        for (double value : features) {
+            values.add(value);
+        }
+        request.add("features", values);
+
+        CompletableFuture<Double> prediction = send(request)
+            .thenApply(response -> response.get("prediction").getAsDouble());
+        prediction.whenComplete((result, error) -> {
+            if (error == null) {
+                Metrics.timer("predict.worker").recordSince(start);
+            } else {
+                Metrics.counter("predict.worker.errors").increment();
+            }
+        });
+        return prediction;
+    }
+
+    /**
+     * Sends many rows at once through a shared memory-mapped matrix. The
+     * columns name the order of each row's values; the worker reorders them
+     * to match its model's feature_names.json, or fails if they differ.
+     */
+    public CompletableFuture<double[]> predictBatch(List<String> columns, double[][] rows) {
+        long start = System.nanoTime();
+        SharedMatrix matrix = null;
+        try {
+            matrix = takeMatrix();
+            matrix.write(columns, rows);
+        } catch (IOException e) {
+            if (matrix != null) {
+                releaseMatrix(matrix);
+            }
+            Metrics.counter("predict.worker.errors").increment();
+            return CompletableFuture.failedFuture(e);
+        }
+        SharedMatrix written = matrix;
+        JsonObject request = new JsonObject();
+        request.addProperty("matrix", written.getPath().toString());
+
+        CompletableFuture<double[]> predictions = send(request).thenApply(response -> written.readResults());
+        predictions.whenComplete((result, error) -> {
+            if (error == null) {
+                releaseMatrix(written);
+                Metrics.timer("predict.worker.batch").recordSince(start);
+            } else {
+                // A timed-out process may still write into it, so it is not reused
+                written.close();
+                Metrics.counter("predict.worker.errors").increment();
+            }
+        });
+        return predictions;
+    }
+
+    private SharedMatrix takeMatrix() throws IOException {
+        synchronized (this) {
+            SharedMatrix idle = idleMatrices.poll();
+            if (idle != null) {
+                return idle;
+            }
+        }
+        return SharedMatrix.open();
+    }
+
+    private void releaseMatrix(SharedMatrix matrix) {
+        synchronized (this) {
+            if (!closed) {
+                idleMatrices.push(matrix);
+                return;
+            }
+        }
+        matrix.close();
+    }
+
+    /** Sends one request and completes with its response, or fails with its error. */
+    private CompletableFuture<JsonObject> send(JsonObject request) {
+        long id = nextId.incrementAndGet();
+        request.addProperty("id", id);
+        CompletableFuture<JsonObject> future = new CompletableFuture<>();
+        Connection current = null;
+        synchronized (this) {
+            try {
+                // readResponses marks a connection dead under this lock, so a live one is drained after this put
+                current = ensureRunning();
+                current.pending.put(id, future);
+                current.writer.write(request.toString());
+                current.writer.newLine();
+                current.writer.flush();
+            } catch (IOException e) {
+                if (current != null) {
+                    current.pending.remove(id);
+                }
+                future.completeExceptionally(e);
+                return future;
+            }
+        }
+        Connection sentTo = current;
+        CompletableFuture<JsonObject> answered = new CompletableFuture<>();
+        future.orTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS).whenComplete((response, error) -> {
+            sentTo.pending.remove(id);
+            if (error instanceof TimeoutException) {
+                answered.completeExceptionally(new IOException(
+                    "Prediction worker did not answer within " + TIMEOUT_SECONDS + " s"));
+            } else if (error != null) {
+                answered.completeExceptionally(error);
+            } else {
+                answered.complete(response);
+            }
+        });
+        return answered;
+    }
+
+    private Connection ensureRunning() throws IOException {
+        if (closed) {
+            throw new IOException("Prediction worker has been shut down");
+        }
+        if (connection != null && !connection.dead && connection.process.isAlive()) {
+            return connection;
+        }
+
+        ProcessBuilder pb = new ProcessBuilder("python", "-u", scriptPath, "--serve");
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        long start = System.nanoTime();
+        Connection started = new Connection(pb.start());
+        Metrics.timer("process.spawn").recordSince(start);
+        Metrics.counter("predict.worker.starts").increment();
+        connection = started;
+
+        Thread reader = new Thread(() -> readResponses(started), "prediction-worker-reader");
+        reader.setDaemon(true);
+        reader.start();
+        return started;
+    }
+
+    private void readResponses(Connection source) {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(source.process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JsonObject response;
+                try {
+                    response = JsonParser.parseString(line).getAsJsonObject();
+                } catch (RuntimeException e) {
+                    System.err.println("Prediction worker: ignoring malformed line: " + line);
+                    continue;
+                }
+                if (!response.has("id") || response.get("id").isJsonNull()) {
+                    continue;
+                }
+                CompletableFuture<JsonObject> future = source.pending.remove(response.get("id").getAsLong());
+                if (future == null) {
+                    continue;
+                }
+                if (response.has("error")) {
+                    future.completeExceptionally(new IOException(response.get("error").getAsString()));
+                } else {
+                    future.complete(response);
+                }
+            }
+        } catch (IOException e) {
+            // Stream closed because the process exited; handled below
+        }
+
+        // The process may still be alive for a moment after closing stdout; stop sending to it first
+        boolean wasCurrent;
+        synchronized (this) {
+            source.dead = true;
+            wasCurrent = connection == source;
+            if (wasCurrent) {
+                connection = null;
+            }
+        }
+        IOException exited = new IOException("Prediction worker exited unexpectedly");
+        for (Long id : source.pending.keySet()) {
+            CompletableFuture<JsonObject> future = source.pending.remove(id);
+            if (future != null) {
+                future.completeExceptionally(exited);
+            }
+        }
+        if (wasCurrent) {
+            restartAfterCrash(source);
+        }
+    }
+
+    private synchronized void restartAfterCrash(Connection source) {
+        // Only restart eagerly if the process had been healthy for a while, so a
+        // broken Python environment does not turn into a tight restart loop.
+        long uptime = System.currentTimeMillis() - source.startedAt;
+        if (closed || connection != null || uptime < 5000) {
+            return;
+        }
+        try {
+            ensureRunning();
+        } catch (IOException e) {
+            System.err.println("Prediction worker: restart failed: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (SharedMatrix matrix : idleMatrices) {
+            matrix.close();
+        }
+        idleMatrices.clear();
+        if (connection != null) {
+            try {
+                connection.writer.close();
+            } catch (IOException e) {
+                // Process is going away anyway
+            }
+            connection.process.destroy();
+            connection = null;
+        }
+    }
+
+    private static final class Connection {
+        final Process process;
+        final BufferedWriter writer;
+        final Map<Long, CompletableFuture<JsonObject>> pending = new ConcurrentHashMap<>();
+        final long startedAt = System.currentTimeMillis();
+        /** Set once stdout has closed; guarded by the worker's lock. */
+        boolean dead;
+
+        Connection(Process process) {
+            this.process = process;
+            this.writer = new BufferedWriter(
+                new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        }
+    }
+}
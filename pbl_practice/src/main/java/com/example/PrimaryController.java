@@ -3,21 +3,29 @@ package com.example;
 import java.io.IOException;
 import java.io.File;
 import javafx.fxml.FXML;
+import javafx.geometry.Pos;
+import javafx.scene.Cursor;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
+import javafx.stage.Stage;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.control.ScrollPane;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import java.lang.reflect.Type;
-import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
-public class PrimaryController {
+public class PrimaryController implements AnalysisJob.Listener {
     @FXML
     private VBox mainContainer;
     
@@ -30,8 +38,44 @@ public class PrimaryController {
     @FXML
     private VBox metricsContainer;
     
+    @FXML
+    private VBox jobList;
+    
+    private VBox metricsBox;
+    
+    private AnalysisJob shownJob;
+    
     @FXML
     private Label fileStatus;
+    
+    @FXML
+    private Label datasetSummary;
+    
+    @FXML
+    private VBox featureRanking;
+    
+    static final String TARGET_COLUMN = "Infant mortality rate (per 1000 live births)";
+    static final int TOP_FEATURE_COUNT = Integer.getInteger("pbl.topFeatures", 10);
+    static final String SCRIPT_RESOURCE = "/scripts/infant_mortality_analysis.py";
+    static final String OUTPUT_DIR = "output_plots";
+    static final double PLOT_WIDTH = 700;
+    static final String DISTRIBUTIONS_PLOT = "feature_distributions";
+    static final String HEATMAP_PLOT = "correlation_heatmap";
+    static final String IMPORTANCE_PLOT = "feature_importance";
+    static final String COMPARISON_PLOT = "model_comparison";
+    static final String[] PLOTS = { DISTRIBUTIONS_PLOT, HEATMAP_PLOT, IMPORTANCE_PLOT, COMPARISON_PLOT };
+
+    @FXML
+    private void initialize() {
+        // Jobs outlive this screen; pick up the ones still listed from before it was shown
+        List<AnalysisJob> jobs = AnalysisJobScheduler.shared().getJobs();
+        for (AnalysisJob job : jobs) {
+            addJobRow(job);
+        }
+        if (!jobs.isEmpty()) {
+            showJob(jobs.get(jobs.size() - 1));
+        }
+    }
 
     @FXML
     private void handleFileChoose() {
@@ -43,126 +87,296 @@ public class PrimaryController {
         
         File selectedFile = fileChooser.showOpenDialog(mainContainer.getScene().getWindow());
         if (selectedFile != null) {
-            fileStatus.setText("Analyzing file: " + selectedFile.getName());
-            fileStatus.setVisible(true);
-            runAnalysis(selectedFile.getAbsolutePath());
+            try {
+                AnalysisJob job = AnalysisJobScheduler.shared().submit(selectedFile.toPath());
+                addJobRow(job);
+                showJob(job);
+            } catch (IOException e) {
+                showError("Could not start analysis: " + e.getMessage());
+            }
         }
     }
-
-    private void runAnalysis(String filePath) {
-        try {
-            // Get the path to the Python script
-            java.net.URL scriptUrl = getClass().getResource("/scripts/infant_mortality_analysis.py");
-            if (scriptUrl == null) {
-                throw new IOException("Could not find Python script in resources");
-            }
-            
-            String scriptPath = new File(scriptUrl.toURI()).getAbsolutePath();
-            
-            ProcessBuilder pb = new ProcessBuilder("python", scriptPath, filePath);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-            
-            StringBuilder output = new StringBuilder();
-            try (java.io.BufferedReader reader = new java.io.BufferedReader(
-                new java.io.InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.append(line).append("\n");
-                }
-            }
-            
-            int exitCode = process.waitFor();
-            if (exitCode == 0) {
-                displayResults();
-            } else {
-                showError("Analysis failed: " + output.toString());
-            }
-            
-        } catch (Exception e) {
-            String errorMessage = e.getMessage();
-            if (errorMessage.contains("python")) {
-                errorMessage = "Python not found. Please make sure Python is installed and added to your PATH.";
+    
+    private void addJobRow(AnalysisJob job) {
+        Label label = new Label();
+        label.setStyle("-fx-font-size: 12px;");
+        
+        Button viewButton = new Button("View");
+        viewButton.setOnAction(e -> showJob(job));
+        viewButton.setStyle("-fx-background-color: #3498db; -fx-text-fill: white; -fx-padding: 2 8; -fx-background-radius: 3;");
+        
+        Button cancelButton = new Button("Cancel");
+        cancelButton.setOnAction(e -> job.cancel());
+        cancelButton.setStyle("-fx-background-color: #e74c3c; -fx-text-fill: white; -fx-padding: 2 8; -fx-background-radius: 3;");
+        
+        HBox row = new HBox(10, label, viewButton, cancelButton);
+        row.setAlignment(Pos.CENTER_LEFT);
+        row.setUserData(job);
+        jobList.getChildren().add(row);
+        jobList.setVisible(true);
+        jobList.setManaged(true);
+        
+        job.setListener(this);
+        updateJobRow(job);
+    }
+    
+    private void updateJobRow(AnalysisJob job) {
+        for (Node node : jobList.getChildren()) {
+            if (node.getUserData() == job) {
+                HBox row = (HBox) node;
+                ((Label) row.getChildren().get(0)).setText(
+                    String.format("#%d %s - %s", job.getId(), job.getName(), job.getStatus().toString().toLowerCase()));
+                row.getChildren().get(2).setDisable(job.isFinished());
             }
-            showError(errorMessage);
         }
     }
-
-    private void displayResults() {
+    
+    /**
+     * Shows a job's summary, plots and metrics in the results area; its
+     * later progress keeps updating the screen until another job is shown.
+     */
+    private void showJob(AnalysisJob job) {
+        shownJob = job;
+        fileStatus.setText(job.getMessage());
+        fileStatus.setVisible(true);
+        showSummary(job);
+        
+        // Draw charts from their data; PNGs are only shown for results without it
         plotsContainer.getChildren().clear();
-        metricsContainer.getChildren().clear();
+        for (String plot : PLOTS) {
+            File file = job.getOutputDir().resolve(plot + ".png").toFile();
+            if (!showChart(job, plot) && file.exists()) {
+                showPlot(file);
+            }
+        }
+        startMetricsPanel();
+        for (Map.Entry<String, Map<String, Double>> entry : job.getMetrics().entrySet()) {
+            appendModelMetrics(entry.getKey(), entry.getValue());
+        }
+        showSearch(job.getSearch());
+        showTimings(job.getPhaseDurations());
+        resultsContainer.setVisible(true);
+    }
+    
+    private void showSummary(AnalysisJob job) {
+        datasetSummary.setText(job.getSummary() == null ? "" : job.getSummary());
+        datasetSummary.setVisible(job.getSummary() != null);
+        showFeatureRanking(job.getRanking());
+    }
+    
+    private void showFeatureRanking(Map<String, Double> ranking) {
+        featureRanking.getChildren().clear();
+        featureRanking.setVisible(!ranking.isEmpty());
+        featureRanking.setManaged(!ranking.isEmpty());
+        if (ranking.isEmpty()) {
+            return;
+        }
         
-        // Display plots
-        String[] plotFiles = {
-            "output_plots/feature_distributions.png",
-            "output_plots/correlation_heatmap.png",
-            "output_plots/feature_importance.png",
-            "output_plots/model_comparison.png"
-        };
+        Label title = new Label("Top Features by Correlation with Infant Mortality Rate");
+        title.setStyle("-fx-font-size: 14px; -fx-font-weight: bold; -fx-text-fill: #2c3e50;");
+        featureRanking.getChildren().add(title);
         
-        for (String plotFile : plotFiles) {
-            try {
-                File file = new File(plotFile);
-                if (file.exists()) {
-                    Image image = new Image(file.toURI().toString());
-                    ImageView imageView = new ImageView(image);
-                    imageView.setFitWidth(700);
-                    imageView.setPreserveRatio(true);
-                    
-                    Label title = new Label(formatPlotTitle(plotFile));
-                    title.setStyle("-fx-font-size: 16px; -fx-font-weight: bold; -fx-text-fill: #2c3e50;");
-                    
-                    VBox plotBox = new VBox(10);
-                    plotBox.getChildren().addAll(title, imageView);
-                    plotsContainer.getChildren().add(plotBox);
+        int rank = 1;
+        for (Map.Entry<String, Double> entry : ranking.entrySet()) {
+            Label label = new Label(String.format("%d. %s (r = %+.3f)", rank++, entry.getKey(), entry.getValue()));
+            label.setStyle("-fx-font-size: 12px;");
+            featureRanking.getChildren().add(label);
+        }
+    }
+
+    @Override
+    public void onStatusChanged(AnalysisJob job) {
+        updateJobRow(job);
+        if (job.getStatus() == AnalysisJob.Status.FAILED) {
+            showError(job.getName() + ": " + job.getMessage());
+        }
+        if (job != shownJob) {
+            return;
+        }
+        if (job.isFinished() && job.isCached()) {
+            // Cached results arrive all at once rather than as events
+            showJob(job);
+            return;
+        }
+        fileStatus.setText(job.getMessage());
+        if (job.getSummary() != null && !datasetSummary.isVisible()) {
+            showSummary(job);
+        }
+        if (job.getStatus() == AnalysisJob.Status.SUCCEEDED) {
+            showSearch(job.getSearch());
+            showTimings(job.getPhaseDurations());
+        }
+    }
+
+    @Override
+    public void onEvent(AnalysisJob job, AnalysisEvent event) {
+        if (job != shownJob) {
+            return;
+        }
+        switch (event.getType()) {
+            case AnalysisEvent.PLOT_WRITTEN:
+                // A failed job's directory is removed when it finishes, possibly before this event is shown
+                File plot = new File(event.getString("path"));
+                if (plot.exists()) {
+                    showPlot(plot);
                 }
-            } catch (Exception e) {
-                showError("Error loading plot: " + e.getMessage());
+                break;
+            case AnalysisEvent.CHART_DATA:
+                String chart = event.getString("chart");
+                showChart(job, ChartData.DISTRIBUTIONS.equals(chart) ? DISTRIBUTIONS_PLOT
+                    : ChartData.CORRELATION.equals(chart) ? HEATMAP_PLOT : IMPORTANCE_PLOT);
+                break;
+            case AnalysisEvent.MODEL_METRICS:
+                Type metricsType = new TypeToken<Map<String, Double>>(){}.getType();
+                appendModelMetrics(event.getString("model"), new Gson().fromJson(event.get("metrics"), metricsType));
+                showChart(job, COMPARISON_PLOT);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void showSearch(HyperparameterSearch search) {
+        if (search == null) {
+            return;
+        }
+        String score = search.getBestScore() == null ? ""
+            : String.format(", validation R² %.3f", search.getBestScore());
+        Label summary = new Label(String.format(
+            "Hyperparameter search: %d candidates, %d fits in %d successive-halving rounds (%.1f s)"
+                + "\nSaved model: %s (%s%s)",
+            search.getCandidateCount(), search.getEvaluationCount(), search.getRoundCount(), search.getSeconds(),
+            search.getBestModel(), search.describeParams(search.getBestModel()), score));
+        summary.setStyle("-fx-font-size: 12px; -fx-text-fill: #2c3e50;");
+        summary.setWrapText(true);
+        metricsContainer.getChildren().add(summary);
+    }
+
+    private void showTimings(Map<String, Double> durations) {
+        if (durations.isEmpty()) {
+            return;
+        }
+        StringBuilder text = new StringBuilder("Time per phase:");
+        for (Map.Entry<String, Double> entry : durations.entrySet()) {
+            text.append(String.format("\n  %s: %.2f s", entry.getKey().replace('_', ' '), entry.getValue()));
+        }
+        Label timings = new Label(text.toString());
+        timings.setStyle("-fx-font-size: 12px; -fx-text-fill: #7f8c8d;");
+        metricsContainer.getChildren().add(timings);
+    }
+
+    /**
+     * Draws one of the plots from the job's chart data or metrics. Returns
+     * false if the data for it is not available.
+     */
+    private boolean showChart(AnalysisJob job, String plot) {
+        ChartData data = job.getChartData();
+        ChartCanvas chart = null;
+        if (DISTRIBUTIONS_PLOT.equals(plot) && data != null && data.getDistributions() != null) {
+            chart = new HistogramGridChart(data.getDistributions());
+        } else if (HEATMAP_PLOT.equals(plot) && data != null && data.getCorrelation() != null) {
+            chart = new HeatmapChart(data.getCorrelation().getLabels(), data.getCorrelation().getMatrix());
+        } else if (IMPORTANCE_PLOT.equals(plot) && data != null && data.getImportance() != null) {
+            chart = new HorizontalBarChart(data.getImportance().getFeatures(), data.getImportance().getValues(),
+                "Feature importance");
+        } else if (COMPARISON_PLOT.equals(plot) && !job.getMetrics().isEmpty()) {
+            Map<String, Map<String, Double>> metrics = job.getMetrics();
+            double[] r2 = new double[metrics.size()];
+            int i = 0;
+            for (Map<String, Double> modelMetrics : metrics.values()) {
+                Double value = modelMetrics.get("R2");
+                r2[i++] = value == null ? Double.NaN : value;
             }
+            chart = new HorizontalBarChart(new ArrayList<>(metrics.keySet()), r2, "R² score");
         }
-        
-        // Display metrics
+        if (chart == null) {
+            return false;
+        }
+        placePlot(plot, chart);
+        return true;
+    }
+
+    /**
+     * Shows a PNG plot. The image is decoded in the background at display
+     * size; clicking it opens the full-resolution plot.
+     */
+    private void showPlot(File file) {
         try {
-            File metricsFile = new File("output_plots/model_metrics.json");
-            if (metricsFile.exists()) {
-                String metricsJson = new String(Files.readAllBytes(metricsFile.toPath()));
-                Type metricsType = new TypeToken<Map<String, Map<String, Double>>>(){}.getType();
-                Map<String, Map<String, Double>> metrics = new Gson().fromJson(metricsJson, metricsType);
-                
-                Label metricsTitle = new Label("Model Performance Metrics");
-                metricsTitle.setStyle("-fx-font-size: 18px; -fx-font-weight: bold; -fx-text-fill: #2c3e50;");
-                metricsContainer.getChildren().add(metricsTitle);
-                
-                VBox metricsBox = new VBox(5);
-                metricsBox.setStyle("-fx-background-color: white; -fx-padding: 15; -fx-background-radius: 5;");
-                
-                for (Map.Entry<String, Map<String, Double>> entry : metrics.entrySet()) {
-                    String modelName = entry.getKey();
-                    Map<String, Double> modelMetrics = entry.getValue();
-                    
-                    Label modelLabel = new Label(String.format("%s:", modelName));
-                    modelLabel.setStyle("-fx-font-weight: bold; -fx-font-size: 14px;");
-                    
-                    Label metricsLabel = new Label(String.format(
-                        "MAE: %.2f\nRMSE: %.2f\nR²: %.2f",
-                        modelMetrics.get("MAE"),
-                        modelMetrics.get("RMSE"),
-                        modelMetrics.get("R2")
-                    ));
-                    metricsLabel.setStyle("-fx-font-size: 14px;");
-                    
-                    VBox modelBox = new VBox(5);
-                    modelBox.getChildren().addAll(modelLabel, metricsLabel);
-                    metricsBox.getChildren().add(modelBox);
-                }
-                
-                metricsContainer.getChildren().add(metricsBox);
-            }
+            ImageView imageView = new ImageView(PlotImageCache.shared().get(file, PLOT_WIDTH));
+            imageView.setFitWidth(PLOT_WIDTH);
+            imageView.setPreserveRatio(true);
+            imageView.setCursor(Cursor.HAND);
+            imageView.setOnMouseClicked(e -> showFullResolution(file));
+            placePlot(file.getName().replace(".png", ""), imageView);
         } catch (Exception e) {
-            showError("Error loading metrics: " + e.getMessage());
+            showError("Error loading plot: " + e.getMessage());
         }
+    }
+
+    /**
+     * Adds a titled plot, or replaces it if already shown, keeping the plots
+     * in PLOTS order.
+     */
+    private void placePlot(String plot, Node content) {
+        Label title = new Label(formatPlotTitle(plot));
+        title.setStyle("-fx-font-size: 16px; -fx-font-weight: bold; -fx-text-fill: #2c3e50;");
         
-        resultsContainer.setVisible(true);
+        VBox plotBox = new VBox(10);
+        plotBox.setUserData(plot);
+        plotBox.getChildren().addAll(title, content);
+        
+        int order = Arrays.asList(PLOTS).indexOf(plot);
+        int index = 0;
+        for (Node existing : new ArrayList<>(plotsContainer.getChildren())) {
+            int existingOrder = Arrays.asList(PLOTS).indexOf(existing.getUserData());
+            if (plot.equals(existing.getUserData())) {
+                plotsContainer.getChildren().remove(existing);
+            } else if (existingOrder < order) {
+                index++;
+            }
+        }
+        plotsContainer.getChildren().add(index, plotBox);
+    }
+
+    private void showFullResolution(File file) {
+        ImageView imageView = new ImageView(PlotImageCache.fullResolution(file));
+        ScrollPane scrollPane = new ScrollPane(imageView);
+        scrollPane.setPannable(true);
+        
+        Stage stage = new Stage();
+        stage.initOwner(mainContainer.getScene().getWindow());
+        stage.setTitle(formatPlotTitle(file.getName()));
+        stage.setScene(new Scene(scrollPane, 1000, 750));
+        stage.show();
+    }
+
+    private void startMetricsPanel() {
+        metricsContainer.getChildren().clear();
+        
+        Label metricsTitle = new Label("Model Performance Metrics");
+        metricsTitle.setStyle("-fx-font-size: 18px; -fx-font-weight: bold; -fx-text-fill: #2c3e50;");
+        metricsContainer.getChildren().add(metricsTitle);
+        
+        metricsBox = new VBox(5);
+        metricsBox.setStyle("-fx-background-color: white; -fx-padding: 15; -fx-background-radius: 5;");
+        metricsContainer.getChildren().add(metricsBox);
+    }
+
+    private void appendModelMetrics(String modelName, Map<String, Double> modelMetrics) {
+        Label modelLabel = new Label(String.format("%s:", modelName));
+        modelLabel.setStyle("-fx-font-weight: bold; -fx-font-size: 14px;");
+        
+        Label metricsLabel = new Label(String.format(
+            "MAE: %.2f\nRMSE: %.2f\nR²: %.2f",
+            modelMetrics.get("MAE"),
+            modelMetrics.get("RMSE"),
+            modelMetrics.get("R2")
+        ));
+        metricsLabel.setStyle("-fx-font-size: 14px;");
+        
+        VBox modelBox = new VBox(5);
+        modelBox.getChildren().addAll(modelLabel, metricsLabel);
+        metricsBox.getChildren().add(modelBox);
     }
 
     private String formatPlotTitle(String plotFile) {
@@ -175,6 +389,11 @@ public class PrimaryController {
         App.setRoot("prediction");
     }
 
+    @FXML
+    private void switchToDiagnostics() throws IOException {
+        App.setRoot("diagnostics");
+    }
+
     private void showError(String message) {
         Alert alert = new Alert(AlertType.ERROR);
         alert.setTitle("Error");
@@ -0,0 +1,98 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+/**
+ * The script processes belonging to one analysis job, so that cancelling
+ * the job can kill all of them (and anything they spawned) at once. A
+ * child group holds the processes of one stage, so a failed stage can kill
+ * its own without cancelling the job.
+ */
+final class ProcessGroup {
+
+    private final ProcessGroup parent;
+    private final Set<Process> processes = new HashSet<>();
+    private final Set<ProcessGroup> children = new HashSet<>();
+    private boolean cancelled;
+
+    ProcessGroup() {
+        this(null);
+    }
+
+    private ProcessGroup(ProcessGroup parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * A group whose processes are also killed when this one is cancelled.
+     * Cancelling the child leaves this group alone.
+     */
+    synchronized ProcessGroup child() {
+        ProcessGroup child = new ProcessGroup(this);
+        if (cancelled) {
+            child.cancelled = true;
+        } else {
+            children.add(child);
+        }
+        return child;
+    }
+
+    /**
+     * Registers a started process. Returns false if the group was already
+     * cancelled, in which case the caller should kill the process itself.
+     */
+    synchronized boolean add(Process process) {
+        if (cancelled) {
+            return false;
+        }
+        processes.add(process);
+        return true;
+    }
+
+    synchronized void remove(Process process) {
+        processes.remove(process);
+    }
+
+    synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Throws CancellationException if the group has been cancelled.
+     */
+    void checkCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException("Job cancelled");
+        }
+    }
+
+    /**
+     * Kills every registered process tree; later processes are refused.
+     */
+    void cancel() {
+        List<Process> running;
+        List<ProcessGroup> groups;
+        synchronized (this) {
+            cancelled = true;
+            running = new ArrayList<>(processes);
+            groups = new ArrayList<>(children);
+            children.clear();
+        }
+        if (parent != null) {
+            synchronized (parent) {
+                parent.children.remove(this);
+            }
+        }
+        for (Process process : running) {
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly();
+        }
+        for (ProcessGroup group : groups) {
+            group.cancel();
+        }
+    }
+}
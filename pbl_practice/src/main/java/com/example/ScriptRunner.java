@@ -0,0 +1,106 @@
+package com.example;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+
+/**
+ * Runs one of the bundled Python scripts as a child process.
+ */
+final class ScriptRunner {
+
+    private ScriptRunner() {
+    }
+
+    static String scriptPath(String resource) throws IOException {
+        java.net.URL scriptUrl = ScriptRunner.class.getResource(resource);
+        if (scriptUrl == null) {
+            throw new IOException("Could not find Python script in resources: " + resource);
+        }
+        try {
+            return new File(scriptUrl.toURI()).getAbsolutePath();
+        } catch (java.net.URISyntaxException e) {
+            throw new IOException("Invalid script location: " + scriptUrl, e);
+        }
+    }
+
+    /**
+     * A python command for the script with output merged into stdout.
+     */
+    static ProcessBuilder processBuilder(String scriptPath, List<String> args) {
+        List<String> command = new ArrayList<>();
+        command.add("python");
+        command.add("-u");
+        command.add(scriptPath);
+        command.addAll(args);
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectErrorStream(true);
+        // Each job gets one core; parallelism comes from running several jobs
+        pb.environment().put("OMP_NUM_THREADS", "1");
+        pb.environment().put("OPENBLAS_NUM_THREADS", "1");
+        pb.environment().put("MKL_NUM_THREADS", "1");
+        return pb;
+    }
+
+    /**
+     * Runs python with the script and arguments, passing each line of its
+     * combined output to the listener as it arrives, and returns the whole
+     * output. A non-zero exit becomes an IOException carrying the output.
+     * The process is registered with the group, if one is given, so that
+     * cancelling the group kills it. Runs on a pooled interpreter when one
+     * is idle.
+     */
+    static String run(String scriptPath, List<String> args, Consumer<String> lineListener, ProcessGroup group)
+            throws IOException, InterruptedException {
+        // Prefer an interpreter that has already imported the script's modules
+        InterpreterPool pool = InterpreterPool.sharedIfStarted();
+        if (pool != null && pool.serves(scriptPath)) {
+            String output = pool.tryRun(args, lineListener, group);
+            if (output != null) {
+                return output;
+            }
+        }
+
+        ProcessBuilder pb = processBuilder(scriptPath, args);
+        long start = System.nanoTime();
+        Process process = pb.start();
+        Metrics.timer("process.spawn").recordSince(start);
+        if (group != null && !group.add(process)) {
+            process.destroyForcibly();
+            throw new CancellationException("Job cancelled");
+        }
+
+        try {
+            StringBuilder output = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    output.append(line).append("\n");
+                    lineListener.accept(line);
+                }
+            }
+            int exitCode = process.waitFor();
+            Metrics.timer("script.run").recordSince(start);
+            if (exitCode != 0) {
+                Metrics.counter("script.failures").increment();
+                throw new IOException("Script exited with code " + exitCode + ":\n" + output);
+            }
+            return output.toString();
+        } finally {
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+            if (group != null) {
+                group.remove(process);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A feature matrix handed to predict.py through a memory-mapped file rather
+ * than as JSON. Python maps the rows with numpy.memmap, without parsing or
+ * copying them, and writes one prediction per row into the results area of
+ * the same file. The column names travel in the header, so Python can check
+ * them against its feature_names.json and reorder them if needed.
+ *
+ * Layout, little-endian:
+ * <pre>
+ *   "PBLM", int version, long rows, int columns, int dtype (1 = float64),
+ *   column names (int length + UTF-8 bytes), zero padding to a multiple of 8,
+ *   rows x columns values in row-major order,
+ *   rows results (NaN until written)
+ * </pre>
+ *
+ * Files go in pbl.shm.dir, by default /dev/shm where it exists so the pages
+ * never reach a disk, and are deleted on close. A matrix is reused for one
+ * batch after another: its mapping only grows, so chunked batch runs map a
+ * few regions in all rather than one per chunk (the pages of a mapping stay
+ * pinned until it is garbage-collected). When the directory lacks the free
+ * space for a larger mapping, the file moves to java.io.tmpdir instead,
+ * since running a tmpfs out of pages kills the JVM with SIGBUS.
+ */
+final class SharedMatrix implements AutoCloseable {
+
+    static final int DTYPE_FLOAT64 = 1;
+
+    private static final byte[] MAGIC = "PBLM".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int FIXED_HEADER = 24;
+    private static final long MIN_CAPACITY = 1 << 20;
+
+    private Path file;
+    private MappedByteBuffer buffer;
+    private int resultOffset;
+    private int rows;
+
+    private SharedMatrix(Path file) {
+        this.file = file;
+    }
+
+    /** An empty matrix, to be filled by {@link #write}. */
+    static SharedMatrix open() throws IOException {
+        return new SharedMatrix(Files.createTempFile(directory(), "pbl-matrix-", ".bin"));
+    }
+
+    /** Replaces the contents with the rows, each ordered as the columns, growing the mapping if needed. */
+    void write(List<String> columns, double[][] rows) throws IOException {
+        List<byte[]> names = new ArrayList<>();
+        long namesLength = 0;
+        for (String column : columns) {
+            byte[] name = column.getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            namesLength += Integer.BYTES + name.length;
+        }
+        long dataOffset = (FIXED_HEADER + namesLength + 7) & ~7L;
+        long resultOffset = dataOffset + (long) rows.length * columns.size() * Double.BYTES;
+        long size = resultOffset + (long) rows.length * Double.BYTES;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Batch of " + rows.length + " rows is too large to share in one mapping");
+        }
+        for (double[] row : rows) {
+            if (row.length != columns.size()) {
+                throw new IOException("Expected " + columns.size() + " features but got " + row.length);
+            }
+        }
+        if (buffer == null || buffer.capacity() < size) {
+            grow(size);
+        }
+
+        buffer.clear();
+        buffer.put(MAGIC).putInt(VERSION).putLong(rows.length).putInt(columns.size()).putInt(DTYPE_FLOAT64);
+        for (byte[] name : names) {
+            buffer.putInt(name.length).put(name);
+        }
+        buffer.position((int) dataOffset);
+        DoubleBuffer values = buffer.asDoubleBuffer();
+        for (double[] row : rows) {
+            values.put(row);
+        }
+        for (int i = 0; i < rows.length; i++) {
+            values.put(Double.NaN);
+        }
+        buffer.position(0);
+        this.resultOffset = (int) resultOffset;
+        this.rows = rows.length;
+    }
+
+    /** Maps a region of at least the given size, half as large again as the last one. */
+    private void grow(long size) throws IOException {
+        long current = buffer == null ? 0 : buffer.capacity();
+        long capacity = Math.min(Integer.MAX_VALUE, Math.max(Math.max(size, MIN_CAPACITY), current + (current >> 1)));
+        Path tmp = Paths.get(System.getProperty("java.io.tmpdir"));
+        if (!file.getParent().equals(tmp)
+                && Files.getFileStore(file.getParent()).getUsableSpace() < capacity - current) {
+            Path moved = Files.createTempFile(Files.createDirectories(tmp), "pbl-matrix-", ".bin");
+            Files.deleteIfExists(file);
+            file = moved;
+        }
+        buffer = null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            // The mapping stays valid after the channel is closed
+        }
+    }
+
+    private static Path directory() throws IOException {
+        String configured = System.getProperty("pbl.shm.dir");
+        Path dir;
+        if (configured != null && !configured.isEmpty()) {
+            dir = Paths.get(configured);
+        } else {
+            Path shm = Paths.get("/dev/shm");
+            dir = Files.isDirectory(shm) && Files.isWritable(shm)
+                ? shm : Paths.get(System.getProperty("java.io.tmpdir"));
+        }
+        return Files.createDirectories(dir);
+    }
+
+    Path getPath() {
+        return file;
+    }
+
+    /** The predictions Python wrote, one per row. */
+    double[] readResults() {
+        double[] results = new double[rows];
+        buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN).position(resultOffset).slice()
+            .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(results);
+        return results;
+    }
+
+    @Override
+    public void close() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("Could not remove " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Trains each model in its own Python process, running at most one process
+ * per core; the hyperparameter search runs its rounds on the same pool.
+ * All processes read the split that the prepare stage saved; their output
+ * lines, including each model's metrics event, go to the given listener as
+ * they are written.
+ */
+public class TrainingScheduler {
+
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(), new WorkerThreadFactory());
+
+    private TrainingScheduler() {
+    }
+
+    /**
+     * Trains the models, each with the hyperparameter candidate chosen for
+     * it (the first if none was), and returns their metrics in the given
+     * order. If a model fails, the other training processes are killed and
+     * the failure rethrown.
+     */
+    static Map<String, Map<String, Double>> trainAll(String scriptPath, Path outputDir, List<String> models,
+                                                     Map<String, Integer> candidates,
+                                                     Consumer<String> output, ProcessGroup group)
+            throws IOException, InterruptedException {
+        Type metricsType = new TypeToken<Map<String, Double>>(){}.getType();
+        ProcessGroup stage = group.child();
+        List<Callable<Map<String, Double>>> tasks = new ArrayList<>();
+        for (String model : models) {
+            String candidate = String.valueOf(candidates.getOrDefault(model, 0));
+            tasks.add(() -> {
+                String result = ScriptRunner.run(scriptPath, Arrays.asList("--stage", "train", "--model", model,
+                    "--candidate", candidate, "--output-dir", outputDir.toString()), output, stage);
+                AnalysisEvent event = AnalysisEvent.find(result, AnalysisEvent.MODEL_METRICS);
+                if (event == null) {
+                    throw new IOException("No metrics reported for " + model + ":\n" + result);
+                }
+                return new Gson().<Map<String, Double>>fromJson(event.get("metrics"), metricsType);
+            });
+        }
+
+        List<Map<String, Double>> metrics = runAll(tasks, "Training", stage);
+        Map<String, Map<String, Double>> results = new LinkedHashMap<>();
+        for (int i = 0; i < models.size(); i++) {
+            results.put(models.get(i), metrics.get(i));
+        }
+        return results;
+    }
+
+    /**
+     * Runs the tasks on the pool and returns their results in order. If one
+     * fails, the processes of the rest, which the tasks start in the given
+     * group, are killed (cancelling a future cannot interrupt a thread
+     * reading a child's output) and the failure rethrown. The pool is shared
+     * by all analysis jobs, so concurrent jobs queue for cores rather than
+     * oversubscribing them.
+     */
+    static <T> List<T> runAll(List<Callable<T>> tasks, String what, ProcessGroup group)
+            throws IOException, InterruptedException {
+        CompletionService<T> completion = new ExecutorCompletionService<>(POOL);
+        Map<Future<T>, Integer> futures = new LinkedHashMap<>();
+        for (Callable<T> task : tasks) {
+            futures.put(completion.submit(task), futures.size());
+        }
+        List<T> results = new ArrayList<>(Collections.nCopies(tasks.size(), null));
+        try {
+            // Take tasks as they finish, so the first failure is seen while the others still run
+            for (int i = 0; i < tasks.size(); i++) {
+                Future<T> future = completion.take();
+                results.set(futures.get(future), future.get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CancellationException) {
+                throw (CancellationException) cause;
+            }
+            throw new IOException(what + " failed: " + cause.getMessage(), cause);
+        } finally {
+            group.cancel();
+            for (Future<T> future : futures.keySet()) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    private static final class WorkerThreadFactory implements java.util.concurrent.ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "training-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
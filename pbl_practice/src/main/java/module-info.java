@@ -4,8 +4,9 @@ module com.example.pbl_practice {
     requires javafx.graphics;
     requires javafx.base;
     requires com.google.gson;
-    requires org.apache.commons.io;
+    requires jdk.httpserver;
+    requires java.management;
     
-    opens com.example to javafx.fxml;
+    opens com.example to javafx.fxml, com.google.gson;
     exports com.example;
 }
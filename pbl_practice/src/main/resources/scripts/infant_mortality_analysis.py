@@ -12,84 +12,99 @@ from sklearn.tree import DecisionTreeRegressor
 from sklearn.neighbors import KNeighborsRegressor
 from sklearn.feature_selection import RFE
 from sklearn.metrics import mean_absolute_error, mean_squared_error, r2_score
-from sklearn.model_selection import GridSearchCV
+from sklearn.model_selection import ParameterGrid
 import matplotlib
 matplotlib.use('Agg')  # Use Agg backend for non-interactive plotting
 import os
 import json
 import joblib
+import struct
+import sys
+import time
+import warnings
+from contextlib import contextmanager
 
-def run_analysis(data_path):
-    # Load Data
-    df = pd.read_csv(data_path)
-    df = df.loc[:, ~df.columns.str.contains('Unnamed')]
-    df_numeric = df.select_dtypes(include=[np.number])
+def emit(event, **fields):
+    """Write one progress event as a JSON line on stdout for the app to pick up."""
+    fields['event'] = event
+    fields['ts'] = time.time()
+    sys.stdout.write(json.dumps(fields) + '\n')
+    sys.stdout.flush()
 
-    # Drop missing target values
-    df_cleaned = df.dropna(subset=["Infant mortality rate (per 1000 live births)"])
+@contextmanager
+def phase(name, **fields):
+    """Bracket a step with phase_started/phase_finished events; a step that raises still
+    finishes, with the exception type in 'error', so the app does not show it as running."""
+    emit('phase_started', phase=name, **fields)
+    error = None
+    try:
+        yield
+    except BaseException as e:
+        error = type(e).__name__
+        raise
+    finally:
+        if error is None:
+            emit('phase_finished', phase=name, **fields)
+        else:
+            emit('phase_finished', phase=name, error=error, **fields)
 
-    top_features = df_numeric.corr()["Infant mortality rate (per 1000 live births)"].abs().sort_values(ascending=False).index[1:11]
+def save_plot(output_dir, file_name):
+    path = os.path.join(output_dir, file_name)
+    plt.savefig(path)
+    plt.close()
+    emit('plot_written', path=path)
 
-    # Create output directory if it doesn't exist
-    output_dir = "output_plots"
-    if not os.path.exists(output_dir):
-        os.makedirs(output_dir)
+def write_chart_data(output_dir, charts):
+    """Save the numbers behind the charts so the app can draw them without the PNGs."""
+    with open(os.path.join(output_dir, CHART_DATA_FILE), 'w') as f:
+        json.dump(charts, f)
 
-    # Generate and save plots
-    # 1. Histogram for Feature Distributions
-    fig, axes = plt.subplots(nrows=5, ncols=2, figsize=(16, 20), constrained_layout=True)
-    axes = axes.flatten()
+def _warning_event(message, category, filename, lineno, file=None, line=None):
+    emit('warning', message='%s: %s' % (category.__name__, message))
 
-    for i, feature in enumerate(top_features):
-        sns.histplot(df_cleaned[feature], bins=20, ax=axes[i], color='skyblue', edgecolor='black')
-        axes[i].set_title(feature, fontsize=12)
-        axes[i].tick_params(axis='x', rotation=45)
+warnings.showwarning = _warning_event
 
-    for j in range(i + 1, len(axes)):
-        fig.delaxes(axes[j])
+def export_forest(model, scaler, path):
+    """Write the scaler and tree ensemble as flat little-endian arrays for the Java evaluator.
 
-    plt.savefig(os.path.join(output_dir, 'feature_distributions.png'))
-    plt.close()
+    Format version 2 adds each node's weighted sample count (cover), which the Java TreeSHAP
+    explanations need. Only plain tree averages (random forest, extra trees, single tree) are exported; for
+    any other model the file is removed so the app falls back to the Python worker.
+    """
+    if isinstance(model, (RandomForestRegressor, ExtraTreesRegressor)):
+        trees = [estimator.tree_ for estimator in model.estimators_]
+    elif isinstance(model, DecisionTreeRegressor):
+        trees = [model.tree_]
+    else:
+        if os.path.exists(path):
+            os.remove(path)
+        return False
 
-    # 2. Correlation Heatmap
-    plt.figure(figsize=(14, 10))
-    sns.heatmap(df_cleaned[top_features.tolist() + ["Infant mortality rate (per 1000 live births)"]].corr(), 
-                annot=True, cmap="coolwarm", fmt=".2f", linewidths=0.5, cbar=True, 
-                annot_kws={"size": 10}, square=True)
-    plt.title("Correlation Heatmap (Top Features)", fontsize=14)
-    plt.xticks(fontsize=10, rotation=45, ha='right')
-    plt.yticks(fontsize=10)
-    plt.savefig(os.path.join(output_dir, 'correlation_heatmap.png'))
-    plt.close()
+    with open(path, 'wb') as f:
+        f.write(struct.pack('<4sii', b'PBLF', 2, len(scaler.mean_)))
+        f.write(np.asarray(scaler.mean_, dtype='<f8').tobytes())
+        f.write(np.asarray(scaler.scale_, dtype='<f8').tobytes())
+        f.write(struct.pack('<i', len(trees)))
+        for tree in trees:
+            f.write(struct.pack('<i', tree.node_count))
+            f.write(tree.feature.astype('<i4').tobytes())
+            f.write(tree.threshold.astype('<f8').tobytes())
+            f.write(tree.children_left.astype('<i4').tobytes())
+            f.write(tree.children_right.astype('<i4').tobytes())
+            f.write(tree.value[:, 0, 0].astype('<f8').tobytes())
+            f.write(tree.weighted_n_node_samples.astype('<f8').tobytes())
+    return True
 
-    # 3. Feature Importance Plot
-    rf_model = RandomForestRegressor(n_estimators=100, random_state=42)
-    rf_model.fit(df_cleaned[top_features], df_cleaned["Infant mortality rate (per 1000 live births)"])
-    feature_importances = rf_model.feature_importances_
-
-    plt.figure(figsize=(12, 6))
-    sns.barplot(x=feature_importances, y=top_features, hue=top_features, palette="coolwarm", legend=False)
-    plt.xlabel("Feature Importance")
-    plt.ylabel("Features")
-    plt.title("The Effect On Infant Mortality Rate")
-    plt.savefig(os.path.join(output_dir, 'feature_importance.png'))
-    plt.close()
+TARGET = "Infant mortality rate (per 1000 live births)"
+DEFAULT_OUTPUT_DIR = "output_plots"
+TRAINING_DATA_DIR = "training_data"
+CHART_DATA_FILE = "chart_data.json"
+MODELS_DIR = "models"
+SEARCH_ETA = 3           # Successive halving keeps the best 1/SEARCH_ETA each round
+MIN_SEARCH_ROWS = 30     # Smallest training subsample a search round fits on
 
-    # Prepare data for model training
-    X = df_cleaned[top_features]
-    y = df_cleaned["Infant mortality rate (per 1000 live births)"]
-    X_train, X_test, y_train, y_test = train_test_split(X, y, test_size=0.2, random_state=42)
-    
-    # Scale the features
-    scaler = StandardScaler()
-    X_train_scaled = scaler.fit_transform(X_train)
-    X_test_scaled = scaler.transform(X_test)
-    
-    # Save the scaler for later use in prediction
-    joblib.dump(scaler, os.path.join(output_dir, 'scaler.joblib'))
-    
-    # Initialize models
-    models = {
+def build_models():
+    return {
         'Random Forest': RandomForestRegressor(n_estimators=100, random_state=42),
         'Gradient Boosting': GradientBoostingRegressor(n_estimators=100, random_state=42),
         'SVR': SVR(kernel='rbf'),
@@ -102,43 +117,288 @@ def run_analysis(data_path):
         'AdaBoost': AdaBoostRegressor(n_estimators=100, random_state=42),
         'Extra Trees': ExtraTreesRegressor(n_estimators=100, random_state=42)
     }
-    
-    # Train models and collect metrics
-    metrics = {}
-    for name, model in models.items():
+
+# Hyperparameter candidates per model, searched with successive halving
+SEARCH_SPACES = {
+    'Random Forest': {'n_estimators': [100, 300], 'max_depth': [None, 10], 'min_samples_leaf': [1, 3]},
+    'Gradient Boosting': {'n_estimators': [100, 300], 'learning_rate': [0.05, 0.1], 'max_depth': [2, 3]},
+    'SVR': {'C': [1.0, 10.0, 100.0], 'gamma': ['scale', 0.1]},
+    'Linear Regression': {},
+    'Ridge Regression': {'alpha': [0.1, 1.0, 10.0]},
+    'Lasso Regression': {'alpha': [0.01, 0.1, 1.0]},
+    'ElasticNet': {'alpha': [0.01, 0.1, 1.0], 'l1_ratio': [0.2, 0.5, 0.8]},
+    'Decision Tree': {'max_depth': [None, 5, 10], 'min_samples_leaf': [1, 5]},
+    'KNN': {'n_neighbors': [3, 5, 10], 'weights': ['uniform', 'distance']},
+    'AdaBoost': {'n_estimators': [50, 100], 'learning_rate': [0.5, 1.0]},
+    'Extra Trees': {'n_estimators': [100, 300], 'max_depth': [None, 10], 'min_samples_leaf': [1, 3]}
+}
+
+def candidates(name):
+    """The model's hyperparameter candidates, in a fixed order so they can be named by index."""
+    return list(ParameterGrid(SEARCH_SPACES.get(name, {})))
+
+def load_columnar(path):
+    """Map a .pblc columnar copy written by the app (ColumnarFile.java) as a DataFrame of its
+    numeric columns; the dropped non-numeric columns are not stored."""
+    with open(path, 'rb') as f:
+        magic, version, columns, dropped, rows, _, _ = struct.unpack('<4siiiqqq', f.read(40))
+        if magic != b'PBLC' or version != 1:
+            raise ValueError(f"{path} is not a version 1 columnar dataset file")
+        names = []
+        for _ in range(columns + dropped):
+            (length,) = struct.unpack('<i', f.read(4))
+            names.append(f.read(length).decode('utf-8'))
+        data_offset = (f.tell() + 7) & ~7
+    if rows == 0 or columns == 0:
+        return pd.DataFrame({name: np.zeros(0) for name in names[:columns]})
+    values = np.memmap(path, dtype='<f8', mode='r', offset=data_offset, shape=(columns, rows))
+    return pd.DataFrame({name: values[i] for i, name in enumerate(names[:columns])}, copy=False)
+
+def prepare(data_path, top_features=None, output_dir=DEFAULT_OUTPUT_DIR, png=True, correlation=None):
+    """Load the data, compute (and optionally draw) the data charts, and save the scaled
+    train/test split for the training stage. The app passes the heatmap's correlation
+    matrix ({'labels', 'matrix'}) it has already computed; otherwise it is computed here."""
+    with phase('load'):
+        # Load Data
+        df = load_columnar(data_path) if data_path.endswith('.pblc') else pd.read_csv(data_path)
+        df = df.loc[:, ~df.columns.str.contains('Unnamed')]
+        df_numeric = df.select_dtypes(include=[np.number])
+
+        # Drop missing target values
+        df_cleaned = df.dropna(subset=[TARGET])
+
+    with phase('feature_selection'):
+        # The app ranks features in-process and passes them in; only rank here when run standalone
+        if top_features is None:
+            top_features = df_numeric.corr()[TARGET].abs().sort_values(ascending=False).index[1:11]
+        else:
+            top_features = pd.Index(top_features)
+
+    # Create output directory if it doesn't exist
+    if not os.path.exists(output_dir):
+        os.makedirs(output_dir)
+
+    # Compute the chart data, and draw the PNG plots unless the app renders them itself
+    charts = {}
+
+    # 1. Histogram for Feature Distributions
+    with phase('distributions_plot'):
+        distributions = []
+        for feature in top_features:
+            values = df_cleaned[feature].dropna().to_numpy(dtype=float)
+            counts, edges = np.histogram(values, bins=20) if len(values) else (np.zeros(0), np.zeros(0))
+            distributions.append({'feature': feature, 'edges': edges.tolist(), 'counts': counts.tolist()})
+        charts['distributions'] = distributions
+        emit('chart_data', chart='distributions', data=distributions)
+
+        if png:
+            nrows = max(1, (len(top_features) + 1) // 2)
+            fig, axes = plt.subplots(nrows=nrows, ncols=2, figsize=(16, 4 * nrows), constrained_layout=True)
+            axes = axes.flatten()
+
+            for i, feature in enumerate(top_features):
+                sns.histplot(df_cleaned[feature], bins=20, ax=axes[i], color='skyblue', edgecolor='black')
+                axes[i].set_title(feature, fontsize=12)
+                axes[i].tick_params(axis='x', rotation=45)
+
+            for j in range(len(top_features), len(axes)):
+                fig.delaxes(axes[j])
+
+            save_plot(output_dir, 'feature_distributions.png')
+
+    # 2. Correlation Heatmap
+    with phase('heatmap_plot'):
+        if correlation is not None:
+            corr = pd.DataFrame(correlation['matrix'], index=correlation['labels'], columns=correlation['labels'])
+        else:
+            corr = df_cleaned[top_features.tolist() + [TARGET]].corr()
+        charts['correlation'] = {'labels': corr.columns.tolist(), 'matrix': corr.to_numpy().tolist()}
+        emit('chart_data', chart='correlation', data=charts['correlation'])
+
+        if png:
+            plt.figure(figsize=(14, 10))
+            sns.heatmap(corr,
+                        annot=True, cmap="coolwarm", fmt=".2f", linewidths=0.5, cbar=True,
+                        annot_kws={"size": 10}, square=True)
+            plt.title("Correlation Heatmap (Top Features)", fontsize=14)
+            plt.xticks(fontsize=10, rotation=45, ha='right')
+            plt.yticks(fontsize=10)
+            save_plot(output_dir, 'correlation_heatmap.png')
+
+    # 3. Feature Importance Plot
+    with phase('importance_plot'):
+        rf_model = RandomForestRegressor(n_estimators=100, random_state=42)
+        rf_model.fit(df_cleaned[top_features], df_cleaned[TARGET])
+        feature_importances = rf_model.feature_importances_
+        charts['importance'] = {'features': top_features.tolist(), 'values': feature_importances.tolist()}
+        emit('chart_data', chart='importance', data=charts['importance'])
+
+        if png:
+            plt.figure(figsize=(12, 6))
+            sns.barplot(x=feature_importances, y=top_features, hue=top_features, palette="coolwarm", legend=False)
+            plt.xlabel("Feature Importance")
+            plt.ylabel("Features")
+            plt.title("The Effect On Infant Mortality Rate")
+            save_plot(output_dir, 'feature_importance.png')
+
+    write_chart_data(output_dir, charts)
+
+    with phase('split'):
+        # Prepare data for model training
+        X = df_cleaned[top_features]
+        y = df_cleaned[TARGET]
+        X_train, X_test, y_train, y_test = train_test_split(X, y, test_size=0.2, random_state=42)
+        
+        # Scale the features
+        scaler = StandardScaler()
+        X_train_scaled = scaler.fit_transform(X_train)
+        X_test_scaled = scaler.transform(X_test)
+        
+        # Save the scaler for later use in prediction
+        joblib.dump(scaler, os.path.join(output_dir, 'scaler.joblib'))
+
+        # Save the split as .npy files so each training process can memory-map it
+        data_dir = os.path.join(output_dir, TRAINING_DATA_DIR)
+        os.makedirs(data_dir, exist_ok=True)
+        np.save(os.path.join(data_dir, 'X_train.npy'), X_train_scaled)
+        np.save(os.path.join(data_dir, 'X_test.npy'), X_test_scaled)
+        np.save(os.path.join(data_dir, 'y_train.npy'), y_train.to_numpy())
+        np.save(os.path.join(data_dir, 'y_test.npy'), y_test.to_numpy())
+
+        # Save feature names for prediction
+        with open(os.path.join(output_dir, 'feature_names.json'), 'w') as f:
+            json.dump(list(top_features), f)
+
+    # The model names and their candidates are the jobs for the search and train stages
+    model_names = list(build_models().keys())
+    emit('models', models=model_names, candidates={name: candidates(name) for name in model_names})
+    return model_names
+
+def search_split(output_dir):
+    """The training rows split for the search: the first 80% to fit on, the rest to score on.
+    train_test_split has already shuffled them."""
+    data_dir = os.path.join(output_dir, TRAINING_DATA_DIR)
+    X_train = np.load(os.path.join(data_dir, 'X_train.npy'), mmap_mode='r')
+    y_train = np.load(os.path.join(data_dir, 'y_train.npy'), mmap_mode='r')
+    split = int(len(y_train) * 0.8)
+    return X_train[:split], y_train[:split], X_train[split:], y_train[split:]
+
+def evaluate_candidates(name, indices, budget, output_dir=DEFAULT_OUTPUT_DIR):
+    """One successive-halving round for one model: fit each listed candidate on the given fraction
+    of the search rows and report its validation R2 (null if it failed)."""
+    X_fit, y_fit, X_val, y_val = search_split(output_dir)
+    rows = min(len(y_fit), max(MIN_SEARCH_ROWS, int(round(budget * len(y_fit)))))
+    grid = candidates(name)
+    scores = {}
+    with phase('search', model=name):
+        for i in indices:
+            try:
+                model = build_models()[name].set_params(**grid[i])
+                model.fit(X_fit[:rows], y_fit[:rows])
+                score = float(r2_score(y_val, model.predict(X_val)))
+                scores[str(i)] = score if np.isfinite(score) else None
+            except ValueError as e:
+                emit('warning', message='%s candidate %d failed: %s' % (name, i, e))
+                scores[str(i)] = None
+    emit('candidate_scores', model=name, budget=budget, rows=rows, scores=scores)
+    return scores
+
+def successive_halving(model_names, output_dir=DEFAULT_OUTPUT_DIR, eta=SEARCH_ETA):
+    """Search all models' candidates in this process. Returns the winning model and each
+    model's best candidate; the app runs the same rounds in parallel instead."""
+    survivors = [(name, i) for name in model_names for i in range(len(candidates(name)))]
+    rounds, n = 0, len(survivors)
+    while n > 1:
+        n, rounds = -(-n // eta), rounds + 1
+    best = {name: 0 for name in model_names}
+    for r in range(rounds):
+        budget = float(eta) ** (r - rounds + 1)
+        scored = []
+        for name in model_names:
+            indices = [i for model, i in survivors if model == name]
+            if indices:
+                scores = evaluate_candidates(name, indices, budget, output_dir)
+                ranked = sorted(indices, key=lambda i: -np.inf if scores[str(i)] is None else scores[str(i)],
+                                reverse=True)
+                best[name] = ranked[0]
+                scored += [(scores[str(i)], name, i) for i in indices]
+        scored.sort(key=lambda c: -np.inf if c[0] is None else c[0], reverse=True)
+        survivors = [(name, i) for _, name, i in scored[:-(-len(scored) // eta)]]
+    return survivors[0][0], best
+
+def model_path(output_dir, name):
+    return os.path.join(output_dir, TRAINING_DATA_DIR, MODELS_DIR, name.lower().replace(' ', '_') + '.joblib')
+
+def save_best(name, output_dir=DEFAULT_OUTPUT_DIR):
+    """Keep the chosen model, fitted by the train stage, as best_model.joblib for prediction."""
+    model = joblib.load(model_path(output_dir, name))
+    scaler = joblib.load(os.path.join(output_dir, 'scaler.joblib'))
+    joblib.dump(model, os.path.join(output_dir, 'best_model.joblib'))
+    export_forest(model, scaler, os.path.join(output_dir, 'forest_model.bin'))
+    emit('best_model', model=name)
+
+def train_model(name, output_dir=DEFAULT_OUTPUT_DIR, candidate=0):
+    """Fit one model with the given candidate's hyperparameters on the split saved by prepare(),
+    evaluate it on the test rows and keep it for save_best()."""
+    data_dir = os.path.join(output_dir, TRAINING_DATA_DIR)
+    X_train_scaled = np.load(os.path.join(data_dir, 'X_train.npy'), mmap_mode='r')
+    X_test_scaled = np.load(os.path.join(data_dir, 'X_test.npy'), mmap_mode='r')
+    y_train = np.load(os.path.join(data_dir, 'y_train.npy'), mmap_mode='r')
+    y_test = np.load(os.path.join(data_dir, 'y_test.npy'), mmap_mode='r')
+
+    with phase('train', model=name):
+        params = candidates(name)[candidate]
+        model = build_models()[name].set_params(**params)
         model.fit(X_train_scaled, y_train)
         y_pred = model.predict(X_test_scaled)
-        
-        metrics[name] = {
-            'MAE': mean_absolute_error(y_test, y_pred),
-            'RMSE': np.sqrt(mean_squared_error(y_test, y_pred)),
-            'R2': r2_score(y_test, y_pred)
+
+        metrics = {
+            'MAE': float(mean_absolute_error(y_test, y_pred)),
+            'RMSE': float(np.sqrt(mean_squared_error(y_test, y_pred))),
+            'R2': float(r2_score(y_test, y_pred))
         }
+
+        os.makedirs(os.path.dirname(model_path(output_dir, name)), exist_ok=True)
+        joblib.dump(model, model_path(output_dir, name))
+
+    emit('model_metrics', model=name, metrics=metrics, params=params)
+    return metrics
+
+def finalize(output_dir=DEFAULT_OUTPUT_DIR):
+    """Draw the model comparison plot from model_metrics.json."""
+    with open(os.path.join(output_dir, 'model_metrics.json')) as f:
+        metrics = json.load(f)
+
+    # Create model comparison plot
+    with phase('comparison_plot'):
+        plt.figure(figsize=(12, 6))
+        model_names = list(metrics.keys())
+        r2_scores = [metrics[name]['R2'] for name in model_names]
         
-        # Save the best performing model
-        if name == 'Random Forest':  # Using Random Forest as default
-            joblib.dump(model, os.path.join(output_dir, 'best_model.joblib'))
-    
-    # Save feature names for prediction
-    with open(os.path.join(output_dir, 'feature_names.json'), 'w') as f:
-        json.dump(list(top_features), f)
+        plt.bar(model_names, r2_scores)
+        plt.xticks(rotation=45, ha='right')
+        plt.ylabel('R2 Score')
+        plt.title('Model Comparison (R2 Scores)')
+        plt.tight_layout()
+        save_plot(output_dir, 'model_comparison.png')
+
+def run_analysis(data_path, top_features=None, output_dir=DEFAULT_OUTPUT_DIR, png=True):
+    # Run every stage in this process; the app runs the training stage in parallel instead
+    model_names = prepare(data_path, top_features, output_dir, png)
+
+    # Search each model's hyperparameters, then train and collect metrics
+    best_model, best = successive_halving(model_names, output_dir)
+    metrics = {}
+    for name in model_names:
+        metrics[name] = train_model(name, output_dir, best[name])
+    save_best(best_model, output_dir)
     
     # Save metrics to a file
     with open(os.path.join(output_dir, 'model_metrics.json'), 'w') as f:
         json.dump(metrics, f)
-    
-    # Create model comparison plot
-    plt.figure(figsize=(12, 6))
-    model_names = list(metrics.keys())
-    r2_scores = [metrics[name]['R2'] for name in model_names]
-    
-    plt.bar(model_names, r2_scores)
-    plt.xticks(rotation=45, ha='right')
-    plt.ylabel('R2 Score')
-    plt.title('Model Comparison (R2 Scores)')
-    plt.tight_layout()
-    plt.savefig(os.path.join(output_dir, 'model_comparison.png'))
-    plt.close()
+
+    if png:
+        finalize(output_dir)
 
     # Return the paths of generated plots and metrics
     return {
@@ -149,8 +409,89 @@ def run_analysis(data_path):
         'metrics': metrics
     }
 
+def main(argv):
+    import argparse
+    parser = argparse.ArgumentParser()
+    parser.add_argument('data_path', nargs='?')
+    parser.add_argument('--features', help='JSON list of pre-selected feature columns')
+    parser.add_argument('--correlation', help='JSON heatmap matrix of the features and target, from the app')
+    parser.add_argument('--stage', choices=['prepare', 'evaluate', 'train', 'save_best', 'finalize'],
+                        help='Run a single stage instead of the whole analysis')
+    parser.add_argument('--model', help='Model to fit in the evaluate, train and save_best stages')
+    parser.add_argument('--candidates', help='Comma-separated candidate indices for the evaluate stage')
+    parser.add_argument('--budget', type=float, default=1.0,
+                        help='Fraction of the search rows the evaluate stage fits on')
+    parser.add_argument('--candidate', type=int, default=0, help='Candidate index for the train stage')
+    parser.add_argument('--output-dir', default=DEFAULT_OUTPUT_DIR)
+    parser.add_argument('--no-png', action='store_true',
+                        help='Only write chart data; the app draws the charts itself')
+    args = parser.parse_args(argv)
+
+    selected_features = None
+    if args.features:
+        with open(args.features) as f:
+            selected_features = json.load(f)
+
+    correlation = None
+    if args.correlation:
+        with open(args.correlation) as f:
+            correlation = json.load(f)
+
+    if args.stage == 'prepare':
+        prepare(args.data_path, selected_features, args.output_dir, png=not args.no_png,
+                correlation=correlation)
+    elif args.stage == 'evaluate':
+        indices = [int(i) for i in args.candidates.split(',')] if args.candidates else []
+        evaluate_candidates(args.model, indices, args.budget, args.output_dir)
+    elif args.stage == 'train':
+        train_model(args.model, args.output_dir, args.candidate)
+    elif args.stage == 'save_best':
+        save_best(args.model, args.output_dir)
+    elif args.stage == 'finalize':
+        finalize(args.output_dir)
+    elif args.data_path:
+        run_analysis(args.data_path, selected_features, args.output_dir, png=not args.no_png)
+
+def serve_jobs():
+    """
+    Pre-warmed interpreter for the app's pool: the heavy imports above are
+    already done, so each job starts computing at once. Reads one JSON
+    request per line on stdin, either {"args": [...]} with the usual command
+    line or {"ping": true}, and ends every job with a job_finished event,
+    preceded by a job_error event if the job raised.
+    """
+    emit('worker_ready')
+    while True:
+        line = sys.stdin.readline()
+        if not line:
+            break
+        try:
+            request = json.loads(line)
+        except ValueError:
+            continue
+        if request.get('ping'):
+            emit('pong')
+            continue
+        status = 0
+        try:
+            main(request.get('args', []))
+        except SystemExit as e:
+            # sys.exit() and sys.exit(None) mean success, as for a real process
+            status = 0 if e.code is None else e.code if isinstance(e.code, int) else 1
+        except Exception as e:
+            # The traceback is for people; the event stream gets one structured line
+            import traceback
+            traceback.print_exc(file=sys.stderr)
+            sys.stderr.flush()
+            emit('job_error', error=type(e).__name__, message=str(e))
+            status = 1
+        finally:
+            plt.close('all')
+            sys.stdout.flush()
+        emit('job_finished', status=status)
+
 if __name__ == "__main__":
-    import sys
-    if len(sys.argv) > 1:
-        data_path = sys.argv[1]
-        run_analysis(data_path) 
\ No newline at end of file
+    if '--worker' in sys.argv[1:]:
+        serve_jobs()
+    else:
+        main(sys.argv[1:])
@@ -1,22 +1,120 @@
 import sys
+import os
 import json
+import struct
 import joblib
 import numpy as np
 
+OUTPUT_DIR = 'output_plots'
+SCALER_PATH = os.path.join(OUTPUT_DIR, 'scaler.joblib')
+MODEL_PATH = os.path.join(OUTPUT_DIR, 'best_model.joblib')
+FEATURE_NAMES_PATH = os.path.join(OUTPUT_DIR, 'feature_names.json')
+
+def load_artifacts():
+    scaler = joblib.load(SCALER_PATH)
+    model = joblib.load(MODEL_PATH)
+    return scaler, model
+
+def load_feature_names():
+    with open(FEATURE_NAMES_PATH) as f:
+        return json.load(f)
+
 def predict(features_json):
     # Load the model and scaler
-    scaler = joblib.load('output_plots/scaler.joblib')
-    model = joblib.load('output_plots/best_model.joblib')
-    
-    # Convert features to numpy array
-    features = np.array(list(json.loads(features_json).values())).reshape(1, -1)
-    
+    scaler, model = load_artifacts()
+
+    # Order the values as the model's features rather than as the JSON object happens to list them
+    values = json.loads(features_json)
+    features = np.array([float(values[name]) for name in load_feature_names()]).reshape(1, -1)
+
     # Scale features and make prediction
     scaled_features = scaler.transform(features)
     prediction = model.predict(scaled_features)[0]
-    
+
     print(prediction)
 
+def map_matrix(path):
+    """Map a feature matrix written by the app (SharedMatrix.java) without copying it. Returns the
+    column names, the rows x columns values and the results array to write predictions into."""
+    with open(path, 'rb') as f:
+        magic, version, rows, columns, dtype = struct.unpack('<4siqii', f.read(24))
+        if magic != b'PBLM' or version != 1 or dtype != 1:
+            raise ValueError(f"{path} is not a version 1 float64 feature matrix")
+        names = []
+        for _ in range(columns):
+            (length,) = struct.unpack('<i', f.read(4))
+            names.append(f.read(length).decode('utf-8'))
+        data_offset = (f.tell() + 7) & ~7
+    result_offset = data_offset + rows * columns * 8
+    if rows == 0:
+        return names, np.zeros((0, columns)), np.zeros(0)
+    values = np.memmap(path, dtype='<f8', mode='r', offset=data_offset, shape=(rows, columns))
+    results = np.memmap(path, dtype='<f8', mode='r+', offset=result_offset, shape=(rows,))
+    return names, values, results
+
+def predict_matrix(path, scaler, model, feature_names):
+    """Predict every row of a shared matrix in place; the columns are reordered to the model's
+    feature order if they arrive in another one."""
+    names, values, results = map_matrix(path)
+    if names != feature_names:
+        if sorted(names) != sorted(feature_names):
+            raise ValueError('The matrix columns do not match the model features')
+        values = values[:, [names.index(name) for name in feature_names]]
+    if len(results):
+        results[:] = model.predict(scaler.transform(values))
+        results.flush()
+    return len(results)
+
+class ModelState:
+    """Keeps the scaler, model and feature names in memory, reloading them when the files change."""
+
+    def __init__(self):
+        self.stamp = None
+        self.scaler = None
+        self.model = None
+        self.feature_names = None
+
+    def current(self):
+        stamp = (os.path.getmtime(SCALER_PATH), os.path.getmtime(MODEL_PATH), os.path.getmtime(FEATURE_NAMES_PATH))
+        if stamp != self.stamp:
+            self.scaler, self.model = load_artifacts()
+            self.feature_names = load_feature_names()
+            self.stamp = stamp
+        return self.scaler, self.model
+
+def serve():
+    # One JSON request per line on stdin, one JSON response per line on stdout.
+    # Requests carry an id so the caller can have several in flight at once, and
+    # either one row of features or the path of a shared matrix of many rows.
+    state = ModelState()
+    try:
+        state.current()
+    except Exception:
+        pass  # Artifacts may not exist yet; report the error per request instead
+
+    for line in sys.stdin:
+        line = line.strip()
+        if not line:
+            continue
+        request_id = None
+        try:
+            request = json.loads(line)
+            request_id = request.get('id')
+            scaler, model = state.current()
+            if 'matrix' in request:
+                rows = predict_matrix(request['matrix'], scaler, model, state.feature_names)
+                response = {'id': request_id, 'rows': rows}
+            else:
+                features = np.asarray(request['features'], dtype=float).reshape(1, -1)
+                prediction = model.predict(scaler.transform(features))[0]
+                response = {'id': request_id, 'prediction': float(prediction)}
+        except Exception as e:
+            response = {'id': request_id, 'error': str(e)}
+        sys.stdout.write(json.dumps(response) + '\n')
+        sys.stdout.flush()
+
 if __name__ == "__main__":
-    if len(sys.argv) > 1:
-        predict(sys.argv[1]) 
\ No newline at end of file
+    if len(sys.argv) > 1 and sys.argv[1] == '--serve':
+        serve()
+    elif len(sys.argv) > 1:
+        predict(sys.argv[1])
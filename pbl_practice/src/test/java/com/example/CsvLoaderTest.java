@@ -0,0 +1,55 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CsvLoaderTest {
+
+    @TempDir
+    Path dir;
+
+    private ColumnarDataset load(String text) throws IOException {
+        Path file = dir.resolve("data.csv");
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return CsvLoader.load(file);
+    }
+
+    /** The column's values; the backing array may be longer than the row count. */
+    private static double[] column(ColumnarDataset data, int column) {
+        return Arrays.copyOf(data.getColumn(column), data.getRowCount());
+    }
+
+    @Test
+    void keepsHeaderNamesAsPandasDoes() throws IOException {
+        ColumnarDataset data = load("\uFEFF a ,b\r\n1,2\r\n3,4\r\n");
+        assertEquals(Arrays.asList(" a ", "b"), data.getColumnNames());
+        assertArrayEquals(new double[] {2, 4}, column(data, 1));
+    }
+
+    @Test
+    void dropsTextAndUnnamedColumns() throws IOException {
+        ColumnarDataset data = load("Unnamed: 0,country,rate\n0,\"Chad, Republic of\",80.5\n1,Peru,11\n");
+        assertEquals(Arrays.asList("rate"), data.getColumnNames());
+        assertTrue(data.getDroppedColumns().containsAll(Arrays.asList("Unnamed: 0", "country")));
+        assertArrayEquals(new double[] {80.5, 11}, column(data, 0));
+    }
+
+    @Test
+    void readsQuotedNewlinesAndMissingValues() throws IOException {
+        ColumnarDataset data = load("note,x\n\"two\nlines\",1.5\nplain,\n");
+        assertEquals(2, data.getRowCount());
+        double[] x = data.getColumn(data.indexOf("x"));
+        assertEquals(1.5, x[0]);
+        assertTrue(Double.isNaN(x[1]));
+    }
+}
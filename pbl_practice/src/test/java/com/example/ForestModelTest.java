@@ -0,0 +1,279 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ForestModelTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * DecisionTreeRegressor fitted on StandardScaler output for x = 1, 2, 3, 4
+     * and y = 1, 1, 3, 3: the scaled x are +-0.447 and +-1.342, so the root
+     * splits at their midpoint 0.0 into two leaves of two samples each.
+     */
+    private static Tree fittedStump() {
+        return new Tree(new int[] {0, -2, -2}, new double[] {0.0, -2, -2}, new int[] {1, -1, -1},
+            new int[] {2, -1, -1}, new double[] {2, 1, 3}, new double[] {4, 2, 2});
+    }
+
+    @Test
+    void predictFollowsTheFittedSplit() throws IOException {
+        ForestModel model = load(2, new double[] {2.5}, new double[] {Math.sqrt(1.25)}, fittedStump());
+        assertEquals(1.0, model.predict(new double[] {1}));
+        assertEquals(1.0, model.predict(new double[] {2}));
+        assertEquals(3.0, model.predict(new double[] {3}));
+        assertEquals(3.0, model.predict(new double[] {4}));
+        // A value on the threshold goes left, as x <= threshold does in sklearn
+        assertEquals(1.0, model.predict(new double[] {2.5}));
+        assertEquals(2.0, model.getExpectedValue());
+    }
+
+    @Test
+    void predictComparesInFloat32LikeSklearn() throws IOException {
+        // sklearn casts inputs to float32 before comparing them with the (float64) threshold
+        double threshold = 0.3f;
+        Tree tree = new Tree(new int[] {0, -2, -2}, new double[] {threshold, -2, -2}, new int[] {1, -1, -1},
+            new int[] {2, -1, -1}, new double[] {0.5, 0, 1}, new double[] {2, 1, 1});
+        ForestModel model = load(2, new double[] {0}, new double[] {1}, tree);
+        // Just above the threshold in float64, but equal to it in float32
+        assertEquals(0.0, model.predict(new double[] {Math.nextUp(threshold)}));
+        assertEquals(1.0, model.predict(new double[] {threshold + 1e-7}));
+    }
+
+    @Test
+    void predictAveragesTheTrees() throws IOException {
+        Tree other = new Tree(new int[] {-2}, new double[] {-2}, new int[] {-1}, new int[] {-1},
+            new double[] {10}, new double[] {4});
+        ForestModel model = load(2, new double[] {2.5}, new double[] {Math.sqrt(1.25)}, fittedStump(), other);
+        assertEquals(2, model.getTreeCount());
+        assertEquals(5.5, model.predict(new double[] {1}));
+        assertEquals(6.5, model.predict(new double[] {4}));
+    }
+
+    @Test
+    void shapValuesAddUpToThePrediction() throws IOException {
+        Random random = new Random(7);
+        int features = 5;
+        Tree[] trees = new Tree[20];
+        for (int t = 0; t < trees.length; t++) {
+            trees[t] = randomTree(random, features, 6);
+        }
+        double[] mean = new double[features];
+        double[] scale = new double[features];
+        for (int f = 0; f < features; f++) {
+            mean[f] = random.nextGaussian();
+            scale[f] = 0.5 + random.nextDouble();
+        }
+        ForestModel model = load(2, mean, scale, trees);
+        assertTrue(model.canExplain());
+        for (int i = 0; i < 200; i++) {
+            double[] x = randomRow(random, features);
+            double sum = model.getExpectedValue();
+            for (double phi : model.explain(x)) {
+                sum += phi;
+            }
+            assertEquals(model.predict(x), sum, 1e-9);
+        }
+    }
+
+    @Test
+    void shapValuesMatchTheShapleyDefinition() throws IOException {
+        Random random = new Random(11);
+        int features = 4;
+        Tree tree = randomTree(random, features, 5);
+        ForestModel model = load(2, new double[features], filled(features, 1.0), tree);
+        for (int i = 0; i < 50; i++) {
+            double[] x = randomRow(random, features);
+            double[] phi = model.explain(x);
+            double[] exact = shapley(tree, x, features);
+            for (int f = 0; f < features; f++) {
+                assertEquals(exact[f], phi[f], 1e-12);
+            }
+        }
+    }
+
+    @Test
+    void filesWithoutCoverPredictButCannotExplain() throws IOException {
+        ForestModel model = load(1, new double[] {2.5}, new double[] {Math.sqrt(1.25)}, fittedStump());
+        assertFalse(model.canExplain());
+        assertEquals(3.0, model.predict(new double[] {4}));
+        assertThrows(IllegalStateException.class, () -> model.explain(new double[] {4}));
+    }
+
+    /**
+     * Exact Shapley values by enumerating feature subsets, with the value of
+     * a subset taken as TreeSHAP does: features outside it follow both
+     * children, weighted by cover.
+     */
+    private static double[] shapley(Tree tree, double[] x, int features) {
+        double[] phi = new double[features];
+        double[] factorial = new double[features + 1];
+        factorial[0] = 1;
+        for (int n = 1; n <= features; n++) {
+            factorial[n] = factorial[n - 1] * n;
+        }
+        for (int f = 0; f < features; f++) {
+            for (int subset = 0; subset < 1 << features; subset++) {
+                if ((subset & 1 << f) != 0) {
+                    continue;
+                }
+                int size = Integer.bitCount(subset);
+                double weight = factorial[size] * factorial[features - size - 1] / factorial[features];
+                phi[f] += weight * (expectation(tree, 0, x, subset | 1 << f) - expectation(tree, 0, x, subset));
+            }
+        }
+        return phi;
+    }
+
+    private static double expectation(Tree tree, int node, double[] x, int subset) {
+        int f = tree.feature[node];
+        if (f < 0) {
+            return tree.value[node];
+        }
+        int left = tree.left[node];
+        int right = tree.right[node];
+        if ((subset & 1 << f) != 0) {
+            return expectation(tree, (float) x[f] <= tree.threshold[node] ? left : right, x, subset);
+        }
+        return (tree.cover[left] * expectation(tree, left, x, subset)
+            + tree.cover[right] * expectation(tree, right, x, subset)) / tree.cover[node];
+    }
+
+    /** A tree shaped as sklearn exports them: node values are the cover-weighted means of their leaves. */
+    private static Tree randomTree(Random random, int features, int maxDepth) {
+        List<int[]> nodes = new ArrayList<>();
+        List<Double> thresholds = new ArrayList<>();
+        List<double[]> leaves = new ArrayList<>();
+        grow(random, features, maxDepth, nodes, thresholds, leaves);
+        int count = nodes.size();
+        Tree tree = new Tree(new int[count], new double[count], new int[count], new int[count],
+            new double[count], new double[count]);
+        for (int i = 0; i < count; i++) {
+            tree.feature[i] = nodes.get(i)[0];
+            tree.left[i] = nodes.get(i)[1];
+            tree.right[i] = nodes.get(i)[2];
+            tree.threshold[i] = thresholds.get(i);
+            tree.value[i] = leaves.get(i)[0];
+            tree.cover[i] = leaves.get(i)[1];
+        }
+        return tree;
+    }
+
+    /** Appends a subtree in preorder and returns its root's index. */
+    private static int grow(Random random, int features, int depth, List<int[]> nodes, List<Double> thresholds,
+                            List<double[]> leaves) {
+        int index = nodes.size();
+        nodes.add(null);
+        thresholds.add(null);
+        leaves.add(null);
+        if (depth == 0 || (nodes.size() > 1 && random.nextInt(4) == 0)) {
+            nodes.set(index, new int[] {-2, -1, -1});
+            thresholds.set(index, -2.0);
+            leaves.set(index, new double[] {random.nextGaussian() * 10, 1 + random.nextInt(20)});
+            return index;
+        }
+        int left = grow(random, features, depth - 1, nodes, thresholds, leaves);
+        int right = grow(random, features, depth - 1, nodes, thresholds, leaves);
+        double[] l = leaves.get(left);
+        double[] r = leaves.get(right);
+        double cover = l[1] + r[1];
+        nodes.set(index, new int[] {random.nextInt(features), left, right});
+        thresholds.set(index, (double) (float) random.nextGaussian());
+        leaves.set(index, new double[] {(l[0] * l[1] + r[0] * r[1]) / cover, cover});
+        return index;
+    }
+
+    private static double[] randomRow(Random random, int features) {
+        double[] row = new double[features];
+        for (int f = 0; f < features; f++) {
+            row[f] = random.nextGaussian() * 2;
+        }
+        return row;
+    }
+
+    private static double[] filled(int length, double value) {
+        double[] values = new double[length];
+        Arrays.fill(values, value);
+        return values;
+    }
+
+    /** Writes the trees in export_forest's layout (version 1 has no cover) and loads them. */
+    private ForestModel load(int version, double[] mean, double[] scale, Tree... trees) throws IOException {
+        int size = 16 + 16 * mean.length;
+        for (Tree tree : trees) {
+            size += 4 + tree.feature.length * (version == 2 ? 44 : 36);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("PBLF".getBytes(StandardCharsets.US_ASCII)).putInt(version).putInt(mean.length);
+        for (double m : mean) {
+            buffer.putDouble(m);
+        }
+        for (double s : scale) {
+            buffer.putDouble(s);
+        }
+        buffer.putInt(trees.length);
+        for (Tree tree : trees) {
+            buffer.putInt(tree.feature.length);
+            for (int f : tree.feature) {
+                buffer.putInt(f);
+            }
+            for (double t : tree.threshold) {
+                buffer.putDouble(t);
+            }
+            for (int l : tree.left) {
+                buffer.putInt(l);
+            }
+            for (int r : tree.right) {
+                buffer.putInt(r);
+            }
+            for (double v : tree.value) {
+                buffer.putDouble(v);
+            }
+            if (version == 2) {
+                for (double c : tree.cover) {
+                    buffer.putDouble(c);
+                }
+            }
+        }
+        Path file = dir.resolve(ForestModel.FILE_NAME);
+        Files.write(file, buffer.array());
+        return ForestModel.load(file);
+    }
+
+    /** One tree's node arrays, as sklearn's tree_ holds them. */
+    private static final class Tree {
+        final int[] feature;
+        final double[] threshold;
+        final int[] left;
+        final int[] right;
+        final double[] value;
+        final double[] cover;
+
+        Tree(int[] feature, double[] threshold, int[] left, int[] right, double[] value, double[] cover) {
+            this.feature = feature;
+            this.threshold = threshold;
+            this.left = left;
+            this.right = right;
+            this.value = value;
+            this.cover = cover;
+        }
+    }
+}
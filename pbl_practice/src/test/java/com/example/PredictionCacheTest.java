@@ -0,0 +1,67 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class PredictionCacheTest {
+
+    private static final String VERSION = "v1";
+
+    /** Looks the inputs up and stores the prediction, as a caller does on a miss. */
+    private static void remember(PredictionCache cache, double[] features, double prediction) {
+        cache.get(VERSION, features);
+        cache.put(VERSION, features, prediction);
+    }
+
+    @Test
+    void inputsInTheSameBucketShareAnEntry() {
+        PredictionCache cache = new PredictionCache(16, 1.0);
+        remember(cache, new double[] {1.0}, 10.0);
+        assertEquals(10.0, cache.get(VERSION, new double[] {1.49}));
+        assertEquals(10.0, cache.get(VERSION, new double[] {0.5}));
+        // Rounding halves go up, so the bucket ends just below 1.5
+        assertNull(cache.get(VERSION, new double[] {1.5}));
+        assertNull(cache.get(VERSION, new double[] {0.49}));
+    }
+
+    @Test
+    void nanDoesNotShareAnEntryWithZero() {
+        PredictionCache cache = new PredictionCache(16, 1e-6);
+        remember(cache, new double[] {0.0, 1.0}, 10.0);
+        assertNull(cache.get(VERSION, new double[] {Double.NaN, 1.0}));
+        remember(cache, new double[] {Double.NaN, 1.0}, 20.0);
+        assertEquals(20.0, cache.get(VERSION, new double[] {Double.NaN, 1.0}));
+        assertEquals(10.0, cache.get(VERSION, new double[] {0.0, 1.0}));
+    }
+
+    @Test
+    void valuesTooLargeToBucketStayDistinct() {
+        PredictionCache cache = new PredictionCache(16, 1e-6);
+        remember(cache, new double[] {1e13}, 1.0);
+        remember(cache, new double[] {2e13}, 2.0);
+        remember(cache, new double[] {Double.POSITIVE_INFINITY}, 3.0);
+        assertEquals(1.0, cache.get(VERSION, new double[] {1e13}));
+        assertEquals(2.0, cache.get(VERSION, new double[] {2e13}));
+        assertEquals(3.0, cache.get(VERSION, new double[] {Double.POSITIVE_INFINITY}));
+        assertNull(cache.get(VERSION, new double[] {Double.MAX_VALUE}));
+    }
+
+    @Test
+    void exactKeysFoldNegativeZero() {
+        PredictionCache cache = new PredictionCache(16, 0);
+        remember(cache, new double[] {0.0}, 1.0);
+        assertEquals(1.0, cache.get(VERSION, new double[] {-0.0}));
+        remember(cache, new double[] {0.1}, 2.0);
+        assertNull(cache.get(VERSION, new double[] {Math.nextUp(0.1)}));
+    }
+
+    @Test
+    void anotherModelVersionMisses() {
+        PredictionCache cache = new PredictionCache(16, 1e-6);
+        remember(cache, new double[] {1.0}, 10.0);
+        assertEquals(10.0, cache.get(VERSION, new double[] {1.0}));
+        assertNull(cache.get("v2", new double[] {1.0}));
+    }
+}